@@ -0,0 +1,46 @@
+package net.froihofer.dsfinance.bank.common.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Transfer Object for the (possibly downsampled) history of the bank's available volume
+ */
+public class BankVolumeHistoryDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String currency;
+    private int totalPoints; // points in the requested range before downsampling
+    private List<BankVolumePointDTO> points;
+
+    public BankVolumeHistoryDTO() {
+        this.points = new ArrayList<>();
+        this.currency = "USD";
+    }
+
+    // Getters and Setters
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public int getTotalPoints() {
+        return totalPoints;
+    }
+
+    public void setTotalPoints(int totalPoints) {
+        this.totalPoints = totalPoints;
+    }
+
+    public List<BankVolumePointDTO> getPoints() {
+        return points;
+    }
+
+    public void setPoints(List<BankVolumePointDTO> points) {
+        this.points = points;
+    }
+}
@@ -0,0 +1,39 @@
+package net.froihofer.dsfinance.bank.common.dto;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Data Transfer Object for the bank's available volume at a point in time
+ */
+public class BankVolumePointDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long timestamp; // epoch millis
+    private BigDecimal availableVolume;
+
+    public BankVolumePointDTO() {
+    }
+
+    public BankVolumePointDTO(long timestamp, BigDecimal availableVolume) {
+        this.timestamp = timestamp;
+        this.availableVolume = availableVolume;
+    }
+
+    // Getters and Setters
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public BigDecimal getAvailableVolume() {
+        return availableVolume;
+    }
+
+    public void setAvailableVolume(BigDecimal availableVolume) {
+        this.availableVolume = availableVolume;
+    }
+}
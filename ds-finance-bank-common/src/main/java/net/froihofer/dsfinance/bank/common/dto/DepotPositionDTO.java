@@ -14,6 +14,8 @@ public class DepotPositionDTO implements Serializable {
     private Integer quantity;
     private BigDecimal currentPrice;
     private BigDecimal totalValue;
+    // ISO-8601 instant of the price's last update
+    private String priceUpdatedAt;
 
     public DepotPositionDTO() {
     }
@@ -66,5 +68,12 @@ public class DepotPositionDTO implements Serializable {
     public void setTotalValue(BigDecimal totalValue) {
         this.totalValue = totalValue;
     }
-}
 
+    public String getPriceUpdatedAt() {
+        return priceUpdatedAt;
+    }
+
+    public void setPriceUpdatedAt(String priceUpdatedAt) {
+        this.priceUpdatedAt = priceUpdatedAt;
+    }
+}
@@ -0,0 +1,107 @@
+package net.froihofer.dsfinance.bank.common.dto;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Data Transfer Object for the valuation of all customer depots on one day
+ */
+public class DepotValuationDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String valuationDate; // ISO-8601 date
+    private String status;
+    private Integer customers;
+    private Integer positions;
+    private Integer symbols;
+    private Integer unpricedSymbols; // symbols without quote, left out of totalValue
+    private BigDecimal totalValue;
+    private String currency;
+    private String startedAt;
+    private String completedAt;
+
+    public DepotValuationDTO() {
+        this.currency = "USD";
+    }
+
+    // Getters and Setters
+    public String getValuationDate() {
+        return valuationDate;
+    }
+
+    public void setValuationDate(String valuationDate) {
+        this.valuationDate = valuationDate;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Integer getCustomers() {
+        return customers;
+    }
+
+    public void setCustomers(Integer customers) {
+        this.customers = customers;
+    }
+
+    public Integer getPositions() {
+        return positions;
+    }
+
+    public void setPositions(Integer positions) {
+        this.positions = positions;
+    }
+
+    public Integer getSymbols() {
+        return symbols;
+    }
+
+    public void setSymbols(Integer symbols) {
+        this.symbols = symbols;
+    }
+
+    public Integer getUnpricedSymbols() {
+        return unpricedSymbols;
+    }
+
+    public void setUnpricedSymbols(Integer unpricedSymbols) {
+        this.unpricedSymbols = unpricedSymbols;
+    }
+
+    public BigDecimal getTotalValue() {
+        return totalValue;
+    }
+
+    public void setTotalValue(BigDecimal totalValue) {
+        this.totalValue = totalValue;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public String getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(String startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public String getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(String completedAt) {
+        this.completedAt = completedAt;
+    }
+}
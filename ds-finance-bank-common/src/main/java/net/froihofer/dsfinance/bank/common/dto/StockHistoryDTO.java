@@ -0,0 +1,60 @@
+package net.froihofer.dsfinance.bank.common.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Transfer Object for the (possibly downsampled) price history of a stock
+ */
+public class StockHistoryDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String symbol;
+    private String currency;
+    private int totalPoints; // points in the requested range before downsampling
+    private List<StockHistoryPointDTO> points;
+
+    public StockHistoryDTO() {
+        this.points = new ArrayList<>();
+    }
+
+    public StockHistoryDTO(String symbol, String currency) {
+        this();
+        this.symbol = symbol;
+        this.currency = currency;
+    }
+
+    // Getters and Setters
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public void setSymbol(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public int getTotalPoints() {
+        return totalPoints;
+    }
+
+    public void setTotalPoints(int totalPoints) {
+        this.totalPoints = totalPoints;
+    }
+
+    public List<StockHistoryPointDTO> getPoints() {
+        return points;
+    }
+
+    public void setPoints(List<StockHistoryPointDTO> points) {
+        this.points = points;
+    }
+}
@@ -0,0 +1,39 @@
+package net.froihofer.dsfinance.bank.common.dto;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Data Transfer Object for a single point of a stock's price history
+ */
+public class StockHistoryPointDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long timestamp; // epoch millis of the trade
+    private BigDecimal price;
+
+    public StockHistoryPointDTO() {
+    }
+
+    public StockHistoryPointDTO(long timestamp, BigDecimal price) {
+        this.timestamp = timestamp;
+        this.price = price;
+    }
+
+    // Getters and Setters
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+}
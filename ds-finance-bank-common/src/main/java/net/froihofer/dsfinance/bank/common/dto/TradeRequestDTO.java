@@ -11,6 +11,7 @@ public class TradeRequestDTO implements Serializable {
     private String stockSymbol;
     private Integer quantity;
     private String customerNumber; // Only for employee operations
+    private String idempotencyKey; // Alternative to the Idempotency-Key header
 
     public TradeRequestDTO() {
     }
@@ -44,5 +45,12 @@ public class TradeRequestDTO implements Serializable {
     public void setCustomerNumber(String customerNumber) {
         this.customerNumber = customerNumber;
     }
-}
 
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+}
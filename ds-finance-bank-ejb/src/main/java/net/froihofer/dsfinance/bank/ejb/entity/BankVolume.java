@@ -7,18 +7,21 @@ import java.time.OffsetDateTime;
 
 /**
  * JPA Entity for Bank's investable volume
+ * Single-row ledger: the bank has exactly one row, with id {@link #LEDGER_ID}
  */
 @Entity
 @Table(name = "bank_volume")
-@NamedQueries({
-    @NamedQuery(name = "BankVolume.findCurrent", query = "SELECT b FROM BankVolume b ORDER BY b.createdAt DESC")
-})
 public class BankVolume implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    public static final Long LEDGER_ID = 1L;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Long id;
+    private Long id = LEDGER_ID;
+
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
 
     @Column(name = "available_volume", nullable = false, precision = 15, scale = 2)
     private BigDecimal availableVolume;
@@ -46,6 +49,14 @@ public class BankVolume implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public BigDecimal getAvailableVolume() {
         return availableVolume;
     }
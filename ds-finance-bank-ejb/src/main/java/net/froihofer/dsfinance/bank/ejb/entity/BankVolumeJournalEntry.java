@@ -0,0 +1,90 @@
+package net.froihofer.dsfinance.bank.ejb.entity;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+/**
+ * JPA Entity for one change of the bank's available volume (append-only)
+ * Negative amounts are debits (buys), positive amounts credits (sells)
+ */
+@Entity
+@Table(name = "bank_volume_journal")
+@NamedQueries({
+    @NamedQuery(name = "BankVolumeJournalEntry.sumAfter",
+                query = "SELECT COALESCE(SUM(e.amount), 0) FROM BankVolumeJournalEntry e WHERE e.id > :after"),
+    @NamedQuery(name = "BankVolumeJournalEntry.sumBetween",
+                query = "SELECT COALESCE(SUM(e.amount), 0) FROM BankVolumeJournalEntry e WHERE e.id > :after AND e.id <= :upTo"),
+    @NamedQuery(name = "BankVolumeJournalEntry.maxIdBefore",
+                query = "SELECT MAX(e.id) FROM BankVolumeJournalEntry e WHERE e.createdAt < :cutoff")
+})
+public class BankVolumeJournalEntry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "trade_ref", length = 100)
+    private String tradeRef;
+
+    @Column(name = "customer_number", length = 50)
+    private String customerNumber;
+
+    @Column(name = "amount", nullable = false, precision = 18, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+
+    public BankVolumeJournalEntry() {
+    }
+
+    public BankVolumeJournalEntry(String tradeRef, String customerNumber, BigDecimal amount) {
+        this.tradeRef = tradeRef;
+        this.customerNumber = customerNumber;
+        this.amount = amount;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTradeRef() {
+        return tradeRef;
+    }
+
+    public void setTradeRef(String tradeRef) {
+        this.tradeRef = tradeRef;
+    }
+
+    public String getCustomerNumber() {
+        return customerNumber;
+    }
+
+    public void setCustomerNumber(String customerNumber) {
+        this.customerNumber = customerNumber;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public OffsetDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(OffsetDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,71 @@
+package net.froihofer.dsfinance.bank.ejb.entity;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+/**
+ * JPA Entity for a compacted bank volume balance: the available volume after all
+ * journal entries up to and including {@code journalId}
+ */
+@Entity
+@Table(name = "bank_volume_snapshot")
+@NamedQueries({
+    @NamedQuery(name = "BankVolumeSnapshot.findLatest",
+                query = "SELECT s FROM BankVolumeSnapshot s ORDER BY s.journalId DESC"),
+    @NamedQuery(name = "BankVolumeSnapshot.findInRange",
+                query = "SELECT s FROM BankVolumeSnapshot s WHERE s.asOf >= :from AND s.asOf <= :to ORDER BY s.asOf")
+})
+public class BankVolumeSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "journal_id", nullable = false, unique = true)
+    private Long journalId;
+
+    @Column(name = "balance", nullable = false, precision = 18, scale = 2)
+    private BigDecimal balance;
+
+    @Column(name = "as_of", nullable = false)
+    private OffsetDateTime asOf;
+
+    public BankVolumeSnapshot() {
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getJournalId() {
+        return journalId;
+    }
+
+    public void setJournalId(Long journalId) {
+        this.journalId = journalId;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public void setBalance(BigDecimal balance) {
+        this.balance = balance;
+    }
+
+    public OffsetDateTime getAsOf() {
+        return asOf;
+    }
+
+    public void setAsOf(OffsetDateTime asOf) {
+        this.asOf = asOf;
+    }
+}
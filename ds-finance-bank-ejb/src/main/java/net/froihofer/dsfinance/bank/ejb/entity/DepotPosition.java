@@ -13,8 +13,8 @@ import java.io.Serializable;
 @NamedQueries({
     @NamedQuery(name = "DepotPosition.findByCustomer",
                 query = "SELECT d FROM DepotPosition d WHERE d.customer.id = :customerId"),
-    @NamedQuery(name = "DepotPosition.findByCustomerAndStock",
-                query = "SELECT d FROM DepotPosition d WHERE d.customer.id = :customerId AND d.stockSymbol = :stockSymbol")
+    @NamedQuery(name = "DepotPosition.deleteEmpty",
+                query = "DELETE FROM DepotPosition d WHERE d.quantity = 0")
 })
 public class DepotPosition implements Serializable {
     private static final long serialVersionUID = 1L;
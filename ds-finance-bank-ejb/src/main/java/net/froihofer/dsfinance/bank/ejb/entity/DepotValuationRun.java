@@ -0,0 +1,134 @@
+package net.froihofer.dsfinance.bank.ejb.entity;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+/**
+ * JPA Entity for the valuation of all customer depots on one day
+ */
+@Entity
+@Table(name = "depot_valuation_run")
+@NamedQueries({
+    @NamedQuery(name = "DepotValuationRun.findLatest",
+                query = "SELECT r FROM DepotValuationRun r WHERE r.status = :completed ORDER BY r.valuationDate DESC")
+})
+public class DepotValuationRun implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Lifecycle: RUNNING -> COMPLETED | FAILED; a run of the same day may be started again
+     */
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    @Id
+    @Column(name = "valuation_date")
+    private LocalDate valuationDate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status;
+
+    @Column(name = "customers")
+    private Integer customers;
+
+    @Column(name = "positions")
+    private Integer positions;
+
+    @Column(name = "symbols")
+    private Integer symbols;
+
+    @Column(name = "unpriced_symbols")
+    private Integer unpricedSymbols;
+
+    @Column(name = "total_value", precision = 18, scale = 2)
+    private BigDecimal totalValue;
+
+    @Column(name = "started_at", nullable = false)
+    private OffsetDateTime startedAt;
+
+    @Column(name = "completed_at")
+    private OffsetDateTime completedAt;
+
+    public DepotValuationRun() {
+    }
+
+    // Getters and Setters
+    public LocalDate getValuationDate() {
+        return valuationDate;
+    }
+
+    public void setValuationDate(LocalDate valuationDate) {
+        this.valuationDate = valuationDate;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public Integer getCustomers() {
+        return customers;
+    }
+
+    public void setCustomers(Integer customers) {
+        this.customers = customers;
+    }
+
+    public Integer getPositions() {
+        return positions;
+    }
+
+    public void setPositions(Integer positions) {
+        this.positions = positions;
+    }
+
+    public Integer getSymbols() {
+        return symbols;
+    }
+
+    public void setSymbols(Integer symbols) {
+        this.symbols = symbols;
+    }
+
+    public Integer getUnpricedSymbols() {
+        return unpricedSymbols;
+    }
+
+    public void setUnpricedSymbols(Integer unpricedSymbols) {
+        this.unpricedSymbols = unpricedSymbols;
+    }
+
+    public BigDecimal getTotalValue() {
+        return totalValue;
+    }
+
+    public void setTotalValue(BigDecimal totalValue) {
+        this.totalValue = totalValue;
+    }
+
+    public OffsetDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(OffsetDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public OffsetDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(OffsetDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+}
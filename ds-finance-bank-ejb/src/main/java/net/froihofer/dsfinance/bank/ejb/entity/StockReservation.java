@@ -0,0 +1,145 @@
+package net.froihofer.dsfinance.bank.ejb.entity;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.time.OffsetDateTime;
+
+/**
+ * JPA Entity for shares taken out of a depot for a sell order while it is executed at the exchange
+ */
+@Entity
+@Table(name = "stock_reservation")
+@NamedQueries({
+    @NamedQuery(name = "StockReservation.findExpired",
+                query = "SELECT r.id FROM StockReservation r WHERE r.status = :reserved AND r.expiresAt < :now ORDER BY r.expiresAt")
+})
+public class StockReservation implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Lifecycle: RESERVED -> CONFIRMED | RELEASED | EXPIRED | FILLED_UNBOOKED;
+     * FILLED_UNBOOKED (executed at the exchange but not booked, or outcome unknown)
+     * is left for reconciliation and never expires
+     */
+    public enum Status {
+        RESERVED,
+        CONFIRMED,
+        RELEASED,
+        EXPIRED,
+        FILLED_UNBOOKED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "trade_ref", nullable = false, length = 100)
+    private String tradeRef;
+
+    @Column(name = "customer_number", nullable = false, length = 50)
+    private String customerNumber;
+
+    @Column(name = "stock_symbol", nullable = false, length = 20)
+    private String stockSymbol;
+
+    @Column(name = "quantity", nullable = false)
+    private Integer quantity;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status = Status.RESERVED;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+
+    @Column(name = "expires_at", nullable = false)
+    private OffsetDateTime expiresAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private OffsetDateTime updatedAt = createdAt;
+
+    public StockReservation() {
+    }
+
+    public StockReservation(String tradeRef, String customerNumber, String stockSymbol, Integer quantity,
+                            OffsetDateTime expiresAt) {
+        this.tradeRef = tradeRef;
+        this.customerNumber = customerNumber;
+        this.stockSymbol = stockSymbol;
+        this.quantity = quantity;
+        this.expiresAt = expiresAt;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTradeRef() {
+        return tradeRef;
+    }
+
+    public void setTradeRef(String tradeRef) {
+        this.tradeRef = tradeRef;
+    }
+
+    public String getCustomerNumber() {
+        return customerNumber;
+    }
+
+    public void setCustomerNumber(String customerNumber) {
+        this.customerNumber = customerNumber;
+    }
+
+    public String getStockSymbol() {
+        return stockSymbol;
+    }
+
+    public void setStockSymbol(String stockSymbol) {
+        this.stockSymbol = stockSymbol;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public OffsetDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(OffsetDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public OffsetDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(OffsetDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public OffsetDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(OffsetDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
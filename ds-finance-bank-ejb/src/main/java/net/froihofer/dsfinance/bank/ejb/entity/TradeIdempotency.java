@@ -0,0 +1,148 @@
+package net.froihofer.dsfinance.bank.ejb.entity;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+/**
+ * JPA Entity for the outcome of a buy or sell request sent with an idempotency key.
+ * The key is scoped to the customer ({@code customerNumber:key}).
+ */
+@Entity
+@Table(name = "trade_idempotency")
+@NamedQueries({
+    @NamedQuery(name = "TradeIdempotency.deleteExpiredKey",
+                query = "DELETE FROM TradeIdempotency t WHERE t.requestKey = :requestKey AND t.expiresAt < :now"),
+    @NamedQuery(name = "TradeIdempotency.release",
+                query = "DELETE FROM TradeIdempotency t WHERE t.requestKey = :requestKey AND t.status = :inProgress"),
+    @NamedQuery(name = "TradeIdempotency.purgeExpired",
+                query = "DELETE FROM TradeIdempotency t WHERE t.expiresAt < :now")
+})
+public class TradeIdempotency implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Lifecycle: IN_PROGRESS -> COMPLETED
+     */
+    public enum Status {
+        IN_PROGRESS,
+        COMPLETED
+    }
+
+    @Id
+    @Column(name = "request_key", nullable = false, length = 160)
+    private String requestKey;
+
+    @Column(name = "customer_number", nullable = false, length = 50)
+    private String customerNumber;
+
+    @Column(name = "fingerprint", nullable = false, length = 200)
+    private String fingerprint;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status = Status.IN_PROGRESS;
+
+    @Column(name = "http_status")
+    private Integer httpStatus;
+
+    @Column(name = "message", length = 500)
+    private String message;
+
+    @Column(name = "total_amount", precision = 18, scale = 2)
+    private BigDecimal totalAmount;
+
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+
+    @Column(name = "expires_at", nullable = false)
+    private OffsetDateTime expiresAt;
+
+    public TradeIdempotency() {
+    }
+
+    // Getters and Setters
+    public String getRequestKey() {
+        return requestKey;
+    }
+
+    public void setRequestKey(String requestKey) {
+        this.requestKey = requestKey;
+    }
+
+    public String getCustomerNumber() {
+        return customerNumber;
+    }
+
+    public void setCustomerNumber(String customerNumber) {
+        this.customerNumber = customerNumber;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public Integer getHttpStatus() {
+        return httpStatus;
+    }
+
+    public void setHttpStatus(Integer httpStatus) {
+        this.httpStatus = httpStatus;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(BigDecimal totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(Long orderId) {
+        this.orderId = orderId;
+    }
+
+    public OffsetDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(OffsetDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public OffsetDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(OffsetDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,166 @@
+package net.froihofer.dsfinance.bank.ejb.entity;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+/**
+ * JPA Entity for a buy or sell order accepted for asynchronous execution
+ */
+@Entity
+@Table(name = "trade_order")
+@NamedQueries({
+    @NamedQuery(name = "TradeOrder.claim",
+                query = "UPDATE TradeOrder o SET o.status = :executing, o.updatedAt = :now WHERE o.id = :id AND o.status = :pending"),
+    @NamedQuery(name = "TradeOrder.flagStale",
+                query = "UPDATE TradeOrder o SET o.status = :reconcile, o.failureReason = :reason, o.updatedAt = :now "
+                    + "WHERE o.status = :executing AND o.updatedAt < :cutoff")
+})
+public class TradeOrder implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Direction of the order
+     */
+    public enum Side {
+        BUY,
+        SELL
+    }
+
+    /**
+     * Lifecycle: PENDING -> EXECUTING -> COMPLETED | FAILED, or NEEDS_RECONCILIATION
+     * if the outcome of an execution is unknown or was never recorded
+     */
+    public enum Status {
+        PENDING,
+        EXECUTING,
+        COMPLETED,
+        FAILED,
+        NEEDS_RECONCILIATION
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "customer_number", nullable = false, length = 50)
+    private String customerNumber;
+
+    @Column(name = "stock_symbol", nullable = false, length = 20)
+    private String stockSymbol;
+
+    @Column(name = "quantity", nullable = false)
+    private Integer quantity;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "side", nullable = false, length = 4)
+    private Side side;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status = Status.PENDING;
+
+    @Column(name = "total_amount", precision = 18, scale = 2)
+    private BigDecimal totalAmount;
+
+    @Column(name = "failure_reason", length = 500)
+    private String failureReason;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+
+    @Column(name = "updated_at", nullable = false)
+    private OffsetDateTime updatedAt = createdAt;
+
+    public TradeOrder() {
+    }
+
+    public TradeOrder(String customerNumber, String stockSymbol, Integer quantity, Side side) {
+        this.customerNumber = customerNumber;
+        this.stockSymbol = stockSymbol;
+        this.quantity = quantity;
+        this.side = side;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCustomerNumber() {
+        return customerNumber;
+    }
+
+    public void setCustomerNumber(String customerNumber) {
+        this.customerNumber = customerNumber;
+    }
+
+    public String getStockSymbol() {
+        return stockSymbol;
+    }
+
+    public void setStockSymbol(String stockSymbol) {
+        this.stockSymbol = stockSymbol;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public void setSide(Side side) {
+        this.side = side;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(BigDecimal totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public String getFailureReason() {
+        return failureReason;
+    }
+
+    public void setFailureReason(String failureReason) {
+        this.failureReason = failureReason;
+    }
+
+    public OffsetDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(OffsetDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public OffsetDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(OffsetDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
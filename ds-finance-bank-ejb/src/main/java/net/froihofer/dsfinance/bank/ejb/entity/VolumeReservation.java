@@ -0,0 +1,144 @@
+package net.froihofer.dsfinance.bank.ejb.entity;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+/**
+ * JPA Entity for bank volume held for a buy order while it is executed at the exchange
+ */
+@Entity
+@Table(name = "volume_reservation")
+@NamedQueries({
+    @NamedQuery(name = "VolumeReservation.findExpired",
+                query = "SELECT r.id FROM VolumeReservation r WHERE r.status = :reserved AND r.expiresAt < :now ORDER BY r.expiresAt")
+})
+public class VolumeReservation implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Lifecycle: RESERVED -> CONFIRMED | RELEASED | EXPIRED | FILLED_UNBOOKED;
+     * FILLED_UNBOOKED (executed at the exchange but not booked, or outcome unknown)
+     * is left for reconciliation and never expires
+     */
+    public enum Status {
+        RESERVED,
+        CONFIRMED,
+        RELEASED,
+        EXPIRED,
+        FILLED_UNBOOKED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "trade_ref", nullable = false, length = 100)
+    private String tradeRef;
+
+    @Column(name = "customer_number", nullable = false, length = 50)
+    private String customerNumber;
+
+    @Column(name = "amount", nullable = false, precision = 18, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "confirmed_amount", precision = 18, scale = 2)
+    private BigDecimal confirmedAmount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status = Status.RESERVED;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+
+    @Column(name = "expires_at", nullable = false)
+    private OffsetDateTime expiresAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private OffsetDateTime updatedAt = createdAt;
+
+    public VolumeReservation() {
+    }
+
+    public VolumeReservation(String tradeRef, String customerNumber, BigDecimal amount, OffsetDateTime expiresAt) {
+        this.tradeRef = tradeRef;
+        this.customerNumber = customerNumber;
+        this.amount = amount;
+        this.expiresAt = expiresAt;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTradeRef() {
+        return tradeRef;
+    }
+
+    public void setTradeRef(String tradeRef) {
+        this.tradeRef = tradeRef;
+    }
+
+    public String getCustomerNumber() {
+        return customerNumber;
+    }
+
+    public void setCustomerNumber(String customerNumber) {
+        this.customerNumber = customerNumber;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public BigDecimal getConfirmedAmount() {
+        return confirmedAmount;
+    }
+
+    public void setConfirmedAmount(BigDecimal confirmedAmount) {
+        this.confirmedAmount = confirmedAmount;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public OffsetDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(OffsetDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public OffsetDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(OffsetDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public OffsetDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(OffsetDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,106 @@
+package net.froihofer.dsfinance.bank.ejb.messaging;
+
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ActivationConfigProperty;
+import jakarta.ejb.EJB;
+import jakarta.ejb.MessageDriven;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.jms.JMSDestinationDefinition;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.MessageListener;
+import net.froihofer.dsfinance.bank.common.dto.TradeOrderDTO;
+import net.froihofer.dsfinance.bank.ejb.service.BankFacadeService;
+import net.froihofer.dsfinance.bank.ejb.service.TradeFailures;
+import net.froihofer.dsfinance.bank.ejb.service.TradeOrderService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+/**
+ * Executes orders accepted by {@link TradeOrderService}.
+ *
+ * Each message carries an order id. The order is claimed first, so it runs at
+ * most once even if the message is redelivered or consumed on another node, and
+ * then executed through {@link BankFacadeService} in its own transaction. The
+ * outcome is recorded on the order; a failed trade is not retried. Only a definite
+ * reject marks the order FAILED; if the exchange may have executed it, the order
+ * is flagged for reconciliation instead. Orders left
+ * EXECUTING, e.g. by a node that died mid-trade, are flagged for reconciliation
+ * by {@link TradeOrderService#flagStaleOrders}.
+ *
+ * The queue lives in WildFly's embedded broker (standalone-full profile). Every
+ * node running the application consumes from it with up to {@code maxSession}
+ * concurrent sessions.
+ */
+@JMSDestinationDefinition(
+    name = TradeOrderMessageBean.QUEUE_JNDI_NAME,
+    interfaceName = "jakarta.jms.Queue",
+    destinationName = "TradeOrderQueue")
+@MessageDriven(activationConfig = {
+    @ActivationConfigProperty(propertyName = "destinationLookup", propertyValue = TradeOrderMessageBean.QUEUE_JNDI_NAME),
+    @ActivationConfigProperty(propertyName = "destinationType", propertyValue = "jakarta.jms.Queue"),
+    @ActivationConfigProperty(propertyName = "acknowledgeMode", propertyValue = "Auto-acknowledge"),
+    @ActivationConfigProperty(propertyName = "maxSession", propertyValue = "8")
+})
+@PermitAll
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class TradeOrderMessageBean implements MessageListener {
+    private static final Logger log = LoggerFactory.getLogger(TradeOrderMessageBean.class);
+
+    public static final String QUEUE_JNDI_NAME = "java:/jms/queue/TradeOrderQueue";
+
+    @EJB
+    private TradeOrderService tradeOrderService;
+
+    @EJB
+    private BankFacadeService bankFacadeService;
+
+    @Override
+    public void onMessage(Message message) {
+        Long orderId;
+        try {
+            orderId = message.getBody(Long.class);
+        } catch (JMSException e) {
+            log.error("Discarding unreadable trade order message {}", message, e);
+            return;
+        }
+
+        Optional<TradeOrderDTO> claimed = tradeOrderService.claimOrder(orderId);
+        if (claimed.isEmpty()) {
+            log.info("Order {} is not pending anymore, skipping", orderId);
+            return;
+        }
+
+        TradeOrderDTO order = claimed.get();
+        BigDecimal total;
+        try {
+            total = "BUY".equals(order.getSide())
+                ? bankFacadeService.buyStocks(order.getCustomerNumber(), order.getStockSymbol(), order.getQuantity())
+                : bankFacadeService.sellStocks(order.getCustomerNumber(), order.getStockSymbol(), order.getQuantity());
+        } catch (Exception e) {
+            Throwable cause = TradeFailures.unwrap(e);
+            if (TradeFailures.isRejected(cause)) {
+                log.warn("Order {} failed: {}", orderId, cause.getMessage());
+                tradeOrderService.failOrder(orderId, cause.getMessage());
+            } else {
+                // The exchange may have executed the trade; FAILED would invite a resubmit
+                log.error("Outcome of order {} is unknown, flagging it for reconciliation: {}", orderId, cause.getMessage());
+                tradeOrderService.flagForReconciliation(orderId, cause.getMessage());
+            }
+            return;
+        }
+
+        try {
+            tradeOrderService.completeOrder(orderId, total);
+            log.info("Order {} completed", orderId);
+        } catch (Exception e) {
+            // The trade is booked; reporting it as failed would invite a duplicate order
+            log.error("Order {} was executed for {} but could not be marked completed, leaving it EXECUTING: {}",
+                orderId, total, e.getMessage());
+        }
+    }
+}
@@ -6,10 +6,16 @@ import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import net.froihofer.dsfinance.bank.ejb.service.BankVolumeService;
+import net.froihofer.dsfinance.bank.ejb.service.DepotValuationService;
 import net.froihofer.dsfinance.bank.common.dto.BankVolumeDTO;
+import net.froihofer.dsfinance.bank.common.dto.BankVolumeHistoryDTO;
+import net.froihofer.dsfinance.bank.common.dto.DepotValuationDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
 /**
  * REST API Endpoint for Bank Volume Operations (Employee only)
  */
@@ -23,6 +29,9 @@ public class BankRestService {
     @EJB
     private BankVolumeService bankVolumeService;
 
+    @EJB
+    private DepotValuationService depotValuationService;
+
     /**
      * Get current bank investable volume
      * GET /api/bank/volume
@@ -41,6 +50,85 @@ public class BankRestService {
         }
     }
 
+    /**
+     * Get the history of the bank's available volume
+     * GET /api/bank/volume/history?from=1700000000000&to=1710000000000&points=200
+     *
+     * from/to are epoch millis and optional; the result is downsampled to at most
+     * {@code points} points
+     */
+    @GET
+    @Path("/volume/history")
+    public Response getBankVolumeHistory(@QueryParam("from") Long from,
+                                         @QueryParam("to") Long to,
+                                         @QueryParam("points") Integer points) {
+        try {
+            log.debug("REST: Getting bank volume history (from={}, to={}, points={})", from, to, points);
+            BankVolumeHistoryDTO history = bankVolumeService.getVolumeHistory(from, to, points);
+            return Response.ok(history).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(e.getMessage())).build();
+        } catch (Exception e) {
+            log.error("Error getting bank volume history", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse(e.getMessage())).build();
+        }
+    }
+
+    /**
+     * Get the valuation of all customer depots on a day
+     * GET /api/bank/valuation?date=2024-03-28
+     *
+     * date is optional and defaults to the latest completed valuation
+     */
+    @GET
+    @Path("/valuation")
+    public Response getDepotValuation(@QueryParam("date") String date) {
+        try {
+            log.debug("REST: Getting depot valuation (date={})", date);
+            DepotValuationDTO valuation = depotValuationService.getValuation(date == null ? null : LocalDate.parse(date));
+            if (valuation == null) {
+                return Response.status(Response.Status.NOT_FOUND)
+                        .entity(new ErrorResponse("No depot valuation found")).build();
+            }
+            return Response.ok(valuation).build();
+        } catch (DateTimeParseException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse("Invalid date: " + date)).build();
+        } catch (Exception e) {
+            log.error("Error getting depot valuation", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse(e.getMessage())).build();
+        }
+    }
+
+    /**
+     * Value all customer depots now and store the result as the valuation of a day
+     * POST /api/bank/valuation?date=2024-03-28
+     *
+     * date is optional and defaults to today; an existing valuation of that day is replaced
+     */
+    @POST
+    @Path("/valuation")
+    public Response runDepotValuation(@QueryParam("date") String date) {
+        try {
+            log.info("REST: Running depot valuation (date={})", date);
+            DepotValuationDTO valuation = depotValuationService.runValuation(date == null ? LocalDate.now() : LocalDate.parse(date));
+            return Response.ok(valuation).build();
+        } catch (DateTimeParseException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse("Invalid date: " + date)).build();
+        } catch (IllegalStateException e) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity(new ErrorResponse(e.getMessage())).build();
+        } catch (Exception e) {
+            log.error("Error running depot valuation", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse(e.getMessage())).build();
+        }
+    }
+
     /**
      * Initialize bank volume (first time setup)
      * POST /api/bank/init
@@ -0,0 +1,130 @@
+package net.froihofer.dsfinance.bank.ejb.rest;
+
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.ejb.EJB;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import net.froihofer.dsfinance.bank.ejb.service.BankVolumeCache;
+import net.froihofer.dsfinance.bank.ejb.service.DepotValuationCache;
+import net.froihofer.dsfinance.bank.ejb.service.TradeIdempotencyService;
+import net.froihofer.dsfinance.bank.ejb.trading.FanOutExecutor;
+import net.froihofer.dsfinance.bank.ejb.trading.HedgedInvoker;
+import net.froihofer.dsfinance.bank.ejb.trading.HotSymbolRefresher;
+import net.froihofer.dsfinance.bank.ejb.trading.LatencyTracker;
+import net.froihofer.dsfinance.bank.ejb.trading.OrderAggregator;
+import net.froihofer.dsfinance.bank.ejb.trading.QuoteCache;
+import net.froihofer.dsfinance.bank.ejb.trading.RequestCoalescer;
+import net.froihofer.dsfinance.bank.ejb.trading.QuoteHistoryStore;
+import net.froihofer.dsfinance.bank.ejb.trading.StockSearchIndex;
+import net.froihofer.dsfinance.bank.ejb.trading.TradingCircuitBreaker;
+import net.froihofer.dsfinance.bank.ejb.trading.TradingPortPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * REST API Endpoint for operational metrics of the trading integration (Employee only)
+ */
+@Path("/monitoring")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+@RolesAllowed("employee")
+public class MonitoringRestService {
+    private static final Logger log = LoggerFactory.getLogger(MonitoringRestService.class);
+
+    @EJB
+    private TradingPortPool tradingPortPool;
+
+    @EJB
+    private QuoteCache quoteCache;
+
+    @EJB
+    private RequestCoalescer requestCoalescer;
+
+    @EJB
+    private FanOutExecutor fanOutExecutor;
+
+    @EJB
+    private TradingCircuitBreaker circuitBreaker;
+
+    @EJB
+    private StockSearchIndex searchIndex;
+
+    @EJB
+    private QuoteHistoryStore historyStore;
+
+    @EJB
+    private HotSymbolRefresher hotSymbolRefresher;
+
+    @EJB
+    private LatencyTracker latencyTracker;
+
+    @EJB
+    private HedgedInvoker hedgedInvoker;
+
+    @EJB
+    private OrderAggregator orderAggregator;
+
+    @EJB
+    private TradeIdempotencyService tradeIdempotencyService;
+
+    @EJB
+    private BankVolumeCache bankVolumeCache;
+
+    @EJB
+    private DepotValuationCache depotValuationCache;
+
+    /**
+     * Get trading web service client metrics
+     * GET /api/monitoring/trading
+     */
+    @GET
+    @Path("/trading")
+    public Response getTradingStatistics() {
+        try {
+            Map<String, Object> statistics = new LinkedHashMap<>();
+            statistics.put("circuitBreaker", circuitBreaker.getStatistics());
+            statistics.put("portPool", tradingPortPool.getStatistics());
+            statistics.put("quoteCache", quoteCache.getStatistics());
+            statistics.put("coalescing", requestCoalescer.getStatistics());
+            statistics.put("fanOut", fanOutExecutor.getStatistics());
+            statistics.put("searchIndex", searchIndex.getStatistics());
+            statistics.put("history", historyStore.getStatistics());
+            statistics.put("hotSymbols", hotSymbolRefresher.getStatistics());
+            statistics.put("latency", latencyTracker.getStatistics());
+            statistics.put("hedging", hedgedInvoker.getStatistics());
+            statistics.put("orderAggregation", orderAggregator.getStatistics());
+            statistics.put("idempotency", tradeIdempotencyService.getStatistics());
+            statistics.put("bankVolumeCache", bankVolumeCache.getStatistics());
+            statistics.put("depotValuation", depotValuationCache.getStatistics());
+            return Response.ok(statistics).build();
+        } catch (Exception e) {
+            log.error("Error getting trading statistics", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse(e.getMessage())).build();
+        }
+    }
+
+    /**
+     * Re-resolve the trading web service configuration and rebuild the port pool
+     * POST /api/monitoring/trading/pool/reconfigure
+     */
+    @POST
+    @Path("/trading/pool/reconfigure")
+    public Response reconfigureTradingPortPool() {
+        try {
+            log.info("REST: Reconfiguring trading port pool");
+            boolean changed = tradingPortPool.reconfigure();
+            return Response.ok(new SuccessResponse(changed
+                    ? "Trading port pool reconfigured"
+                    : "Trading port pool configuration unchanged")).build();
+        } catch (Exception e) {
+            log.error("Error reconfiguring trading port pool", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse(e.getMessage())).build();
+        }
+    }
+}
@@ -7,14 +7,24 @@ import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.SecurityContext;
+import jakarta.ws.rs.core.UriInfo;
+import net.froihofer.dsfinance.bank.ejb.entity.TradeOrder;
 import net.froihofer.dsfinance.bank.ejb.service.BankFacadeService;
+import net.froihofer.dsfinance.bank.ejb.service.TradeIdempotencyService;
+import net.froihofer.dsfinance.bank.ejb.service.TradeOrderService;
+import net.froihofer.dsfinance.bank.ejb.service.TradeOutcome;
+import net.froihofer.dsfinance.bank.ejb.trading.TradingUnavailableException;
 import net.froihofer.dsfinance.bank.common.dto.DepotDTO;
 import net.froihofer.dsfinance.bank.common.dto.StockDTO;
+import net.froihofer.dsfinance.bank.common.dto.StockHistoryDTO;
+import net.froihofer.dsfinance.bank.common.dto.TradeOrderDTO;
 import net.froihofer.dsfinance.bank.common.dto.TradeRequestDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * REST API Endpoint for Trading Operations
@@ -27,12 +37,24 @@ import java.util.List;
 public class TradingRestService {
     private static final Logger log = LoggerFactory.getLogger(TradingRestService.class);
 
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+
     @EJB
     private BankFacadeService bankFacadeService;
 
+    @EJB
+    private TradeOrderService tradeOrderService;
+
+    @EJB
+    private TradeIdempotencyService tradeIdempotencyService;
+
     @Context
     private SecurityContext securityContext;
 
+    @Context
+    private UriInfo uriInfo;
+
     /**
      * Search for stocks
      * GET /api/trading/stocks/search?query=Apple
@@ -56,6 +78,37 @@ public class TradingRestService {
         }
     }
 
+    /**
+     * Get the price history of a stock
+     * GET /api/trading/stocks/AAPL/history?from=1700000000000&to=1710000000000&points=200
+     *
+     * from/to are epoch millis and optional; the result is downsampled to at most
+     * {@code points} points
+     */
+    @GET
+    @Path("/stocks/{symbol}/history")
+    public Response getStockHistory(@PathParam("symbol") String symbol,
+                                    @QueryParam("from") Long from,
+                                    @QueryParam("to") Long to,
+                                    @QueryParam("points") Integer points) {
+        try {
+            log.debug("REST: Getting history for {} (from={}, to={}, points={})", symbol, from, to, points);
+
+            StockHistoryDTO history = bankFacadeService.getStockHistory(symbol, from, to, points);
+            return Response.ok(history).build();
+        } catch (TradingUnavailableException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity(new ErrorResponse(e.getMessage())).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(e.getMessage())).build();
+        } catch (Exception e) {
+            log.error("Error getting stock history", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse(e.getMessage())).build();
+        }
+    }
+
     /**
      * Get depot for a customer
      * GET /api/trading/depot/{customerNumber}
@@ -93,53 +146,68 @@ public class TradingRestService {
     /**
      * Buy stocks
      * POST /api/trading/buy
+     * POST /api/trading/buy?async=true (202 Accepted with the queued order)
      *
      * Employees specify customerNumber in request body
      * Customers automatically use their own account
+     * A retry with the same Idempotency-Key header (or idempotencyKey field) returns
+     * the first outcome without trading again
      */
     @POST
     @Path("/buy")
-    public Response buyStocks(TradeRequestDTO request) {
-        try {
-            String customerNumber = request.getCustomerNumber();
-
-            // If customer, override customerNumber with authenticated user
-            if (securityContext.isUserInRole("customer")) {
-                customerNumber = securityContext.getUserPrincipal().getName();
-            }
-
-            if (customerNumber == null || customerNumber.trim().isEmpty()) {
-                return Response.status(Response.Status.BAD_REQUEST)
-                        .entity(new ErrorResponse("Customer number is required")).build();
-            }
-
-            log.info("REST: Buy request - {} shares of {} for customer {}",
-                    request.getQuantity(), request.getStockSymbol(), customerNumber);
-
-            bankFacadeService.buyStocks(customerNumber, request.getStockSymbol(), request.getQuantity());
-
-            return Response.ok(new SuccessResponse("Successfully bought " + request.getQuantity() +
-                    " shares of " + request.getStockSymbol())).build();
-        } catch (IllegalArgumentException | IllegalStateException e) {
-            return Response.status(Response.Status.BAD_REQUEST)
-                    .entity(new ErrorResponse(e.getMessage())).build();
-        } catch (Exception e) {
-            log.error("Error buying stocks", e);
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(new ErrorResponse(e.getMessage())).build();
-        }
+    public Response buyStocks(TradeRequestDTO request, @QueryParam("async") boolean async,
+                              @HeaderParam(IDEMPOTENCY_KEY_HEADER) String idempotencyKey) {
+        return trade(TradeOrder.Side.BUY, request, async, idempotencyKey);
     }
 
     /**
      * Sell stocks
      * POST /api/trading/sell
+     * POST /api/trading/sell?async=true (202 Accepted with the queued order)
      *
      * Employees specify customerNumber in request body
      * Customers automatically use their own account
+     * A retry with the same Idempotency-Key header (or idempotencyKey field) returns
+     * the first outcome without trading again
      */
     @POST
     @Path("/sell")
-    public Response sellStocks(TradeRequestDTO request) {
+    public Response sellStocks(TradeRequestDTO request, @QueryParam("async") boolean async,
+                               @HeaderParam(IDEMPOTENCY_KEY_HEADER) String idempotencyKey) {
+        return trade(TradeOrder.Side.SELL, request, async, idempotencyKey);
+    }
+
+    /**
+     * Get the status of an asynchronous order
+     * GET /api/trading/orders/{orderId}
+     *
+     * Customers can only access their own orders
+     */
+    @GET
+    @Path("/orders/{orderId}")
+    public Response getOrder(@PathParam("orderId") Long orderId) {
+        try {
+            TradeOrderDTO order = tradeOrderService.getOrder(orderId);
+
+            // Security check: customers can only access their own orders
+            if (securityContext.isUserInRole("customer")
+                    && !securityContext.getUserPrincipal().getName().equals(order.getCustomerNumber())) {
+                return Response.status(Response.Status.NOT_FOUND)
+                        .entity(new ErrorResponse("Order not found: " + orderId)).build();
+            }
+
+            return Response.ok(order).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity(new ErrorResponse(e.getMessage())).build();
+        } catch (Exception e) {
+            log.error("Error getting order", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse(e.getMessage())).build();
+        }
+    }
+
+    private Response trade(TradeOrder.Side side, TradeRequestDTO request, boolean async, String idempotencyKey) {
         try {
             String customerNumber = request.getCustomerNumber();
 
@@ -153,21 +221,76 @@ public class TradingRestService {
                         .entity(new ErrorResponse("Customer number is required")).build();
             }
 
-            log.info("REST: Sell request - {} shares of {} for customer {}",
-                    request.getQuantity(), request.getStockSymbol(), customerNumber);
-
-            bankFacadeService.sellStocks(customerNumber, request.getStockSymbol(), request.getQuantity());
+            log.info("REST: {} request - {} shares of {} for customer {}",
+                    side, request.getQuantity(), request.getStockSymbol(), customerNumber);
 
-            return Response.ok(new SuccessResponse("Successfully sold " + request.getQuantity() +
-                    " shares of " + request.getStockSymbol())).build();
-        } catch (IllegalArgumentException | IllegalStateException e) {
+            String owner = customerNumber.trim();
+            String key = idempotencyKey != null && !idempotencyKey.isBlank() ? idempotencyKey : request.getIdempotencyKey();
+            TradeOutcome outcome = tradeIdempotencyService.execute(owner, key, fingerprint(side, request, async),
+                    () -> execute(side, owner, request, async));
+            if (outcome.isReplayed()) {
+                log.info("REST: Replaying outcome of idempotency key {} for customer {}", key, owner);
+            }
+            return toResponse(outcome);
+        } catch (IllegalArgumentException e) {
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity(new ErrorResponse(e.getMessage())).build();
+        } catch (IllegalStateException e) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity(new ErrorResponse(e.getMessage())).build();
         } catch (Exception e) {
-            log.error("Error selling stocks", e);
+            log.error("Error executing {} request", side, e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
                     .entity(new ErrorResponse(e.getMessage())).build();
         }
     }
-}
 
+    private TradeOutcome execute(TradeOrder.Side side, String customerNumber, TradeRequestDTO request, boolean async) {
+        try {
+            if (async) {
+                return TradeOutcome.accepted(tradeOrderService.submitOrder(customerNumber, request.getStockSymbol(),
+                        request.getQuantity(), side).getOrderId());
+            }
+
+            if (side == TradeOrder.Side.BUY) {
+                BigDecimal totalCost = bankFacadeService.buyStocks(customerNumber, request.getStockSymbol(), request.getQuantity());
+                return TradeOutcome.executed("Successfully bought " + request.getQuantity() +
+                        " shares of " + request.getStockSymbol(), totalCost);
+            }
+            BigDecimal totalProceeds = bankFacadeService.sellStocks(customerNumber, request.getStockSymbol(), request.getQuantity());
+            return TradeOutcome.executed("Successfully sold " + request.getQuantity() +
+                    " shares of " + request.getStockSymbol(), totalProceeds);
+        } catch (Exception e) {
+            TradeOutcome outcome = TradeOutcome.failed(e);
+            if (outcome.getStatus() == Response.Status.INTERNAL_SERVER_ERROR.getStatusCode()) {
+                log.error("Error executing {} order", side, e);
+            }
+            return outcome;
+        }
+    }
+
+    private Response toResponse(TradeOutcome outcome) {
+        Response.ResponseBuilder response;
+        if (outcome.getOrderId() != null) {
+            response = accepted(tradeOrderService.getOrder(outcome.getOrderId()));
+        } else if (outcome.isSuccessful()) {
+            response = Response.ok(new SuccessResponse(outcome.getMessage()));
+        } else {
+            response = Response.status(outcome.getStatus()).entity(new ErrorResponse(outcome.getMessage()));
+        }
+        if (outcome.isReplayed()) {
+            response.header(IDEMPOTENT_REPLAYED_HEADER, "true");
+        }
+        return response.build();
+    }
+
+    private static String fingerprint(TradeOrder.Side side, TradeRequestDTO request, boolean async) {
+        String symbol = request.getStockSymbol() == null ? "" : request.getStockSymbol().trim().toUpperCase(Locale.ROOT);
+        return side + "|" + symbol + "|" + request.getQuantity() + "|" + (async ? "async" : "sync");
+    }
+
+    private Response.ResponseBuilder accepted(TradeOrderDTO order) {
+        return Response.accepted(order)
+                .location(uriInfo.getBaseUriBuilder().path("trading/orders/{orderId}").build(order.getOrderId()));
+    }
+}
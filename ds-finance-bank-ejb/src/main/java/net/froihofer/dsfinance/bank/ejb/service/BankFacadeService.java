@@ -1,16 +1,27 @@
 package net.froihofer.dsfinance.bank.ejb.service;
 
+import jakarta.annotation.Resource;
 import jakarta.annotation.security.PermitAll;
 import jakarta.ejb.EJB;
+import jakarta.ejb.SessionContext;
 import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
 import net.froihofer.dsfinance.bank.ejb.entity.Customer;
 import net.froihofer.dsfinance.bank.common.dto.DepotDTO;
 import net.froihofer.dsfinance.bank.common.dto.StockDTO;
+import net.froihofer.dsfinance.bank.common.dto.StockHistoryDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Facade Service for Bank Operations
@@ -22,6 +33,8 @@ import java.util.List;
 public class BankFacadeService {
     private static final Logger log = LoggerFactory.getLogger(BankFacadeService.class);
 
+    private static final long NAME_LOOKUP_TIMEOUT_MILLIS = 2_000;
+
     @EJB
     private CustomerService customerService;
 
@@ -34,6 +47,15 @@ public class BankFacadeService {
     @EJB
     private BankVolumeService bankVolumeService;
 
+    @EJB
+    private VolumeReservationService volumeReservationService;
+
+    @EJB
+    private StockReservationService stockReservationService;
+
+    @Resource
+    private SessionContext sessionContext;
+
     /**
      * Search for stocks
      */
@@ -41,6 +63,13 @@ public class BankFacadeService {
         return tradingService.searchStocks(searchTerm);
     }
 
+    /**
+     * Get the (downsampled) price history of a stock
+     */
+    public StockHistoryDTO getStockHistory(String stockSymbol, Long from, Long to, Integer points) {
+        return tradingService.getStockHistory(stockSymbol, from, to, points);
+    }
+
     /**
      * Get depot for a customer
      */
@@ -55,8 +84,16 @@ public class BankFacadeService {
 
     /**
      * Buy stocks for a customer
+     * Runs without a transaction: the estimated cost is reserved in a short
+     * transaction, the order is executed at the exchange, and a second short
+     * transaction books the position and settles the reservation with the actual
+     * cost. The reservation is released only if the order was definitely rejected;
+     * after any other failure the exchange may have filled it, so it is kept for
+     * reconciliation.
+     * @return the total cost
      */
-    public void buyStocks(String customerNumber, String stockSymbol, Integer quantity) {
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public BigDecimal buyStocks(String customerNumber, String stockSymbol, Integer quantity) {
         log.info("Processing buy order: {} shares of {} for customer {}", quantity, stockSymbol, customerNumber);
 
         if (customerNumber == null || customerNumber.isBlank()) {
@@ -75,37 +112,113 @@ public class BankFacadeService {
             throw new IllegalArgumentException("Customer not found: " + customerNumber);
         }
 
-        // Get stock details
-        StockDTO stock = tradingService.getStockDetails(stockSymbol);
+        // Estimate the cost from the current (usually cached) quote
+        StockDTO quote = tradingService.getStockQuotes(List.of(stockSymbol)).get(stockSymbol.trim());
+        if (quote == null || quote.getCurrentPrice() == null) {
+            throw new IllegalArgumentException("No quote available for " + stockSymbol);
+        }
+        BigDecimal reservedAmount = volumeReservationService.withMargin(
+            quote.getCurrentPrice().multiply(BigDecimal.valueOf(quantity)));
 
-        // Calculate total cost
-        BigDecimal totalCost = tradingService.buyStocks(stockSymbol, quantity);
+        // Phase 1: reserve the bank volume in its own short transaction
+        String tradeRef = UUID.randomUUID().toString();
+        Long reservationId = volumeReservationService.reserve(customerNumber, tradeRef, reservedAmount);
 
-        // Check if bank has enough volume
-        if (!bankVolumeService.hasEnoughVolume(totalCost)) {
-            throw new IllegalStateException("Insufficient bank volume for this transaction");
-        }
+        // The name is only needed for the depot position: take it from the local
+        // caches, or look it up concurrently so only the buy call is on the critical path
+        Optional<String> cachedName = tradingService.findCachedStockName(stockSymbol);
+        Future<String> nameLookup = cachedName.isPresent() ? null : tradingService.fetchStockName(stockSymbol);
 
-        // Execute trade
+        // Execute the order at the exchange, outside of any transaction
+        BigDecimal totalCost;
         try {
-            // Decrease bank volume
-            bankVolumeService.decreaseVolume(totalCost);
+            totalCost = tradingService.buyStocks(stockSymbol, quantity);
+        } catch (RuntimeException e) {
+            if (nameLookup != null) {
+                nameLookup.cancel(false);
+            }
+            if (TradeFailures.isRejected(e)) {
+                releaseReservation(reservationId, tradeRef);
+            } else {
+                // The exchange may have filled the order: keep the volume for reconciliation
+                log.error("Outcome of buy trade {} is unknown: {}", tradeRef, e.getMessage());
+                markVolumeFilledUnbooked(reservationId, tradeRef, null);
+            }
+            throw e;
+        }
+        String stockName = cachedName.orElseGet(() -> awaitStockName(nameLookup, stockSymbol));
 
-            // Add stocks to customer depot
-            depotService.addStocks(customer, stockSymbol, stock.getName(), quantity);
+        // Phase 2: book the position and settle the reservation
+        try {
+            sessionContext.getBusinessObject(BankFacadeService.class)
+                .bookBuy(reservationId, customerNumber, stockSymbol, stockName, quantity, totalCost);
 
-            log.info("Successfully bought {} shares of {} for customer {}", quantity, stockSymbol, customerNumber);
+            log.info("Successfully bought {} shares of {} for customer {} (trade {})", quantity, stockSymbol, customerNumber, tradeRef);
+            return totalCost;
         } catch (Exception e) {
+            // The exchange executed the order: keep the volume for reconciliation
             log.error("Error during buy transaction", e);
-            // Rollback is automatic due to @Stateless EJB transaction management
+            markVolumeFilledUnbooked(reservationId, tradeRef, totalCost);
             throw new RuntimeException("Failed to execute buy order: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Second phase of {@link #buyStocks}: books the position and confirms the
+     * reservation with the actual cost in one short transaction. Internal use.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void bookBuy(Long reservationId, String customerNumber, String stockSymbol, String stockName,
+                        Integer quantity, BigDecimal totalCost) {
+        Customer customer = customerService.getCustomerEntityByNumber(customerNumber);
+        volumeReservationService.confirm(reservationId, totalCost);
+        depotService.addStocks(customer, stockSymbol, stockName, quantity);
+    }
+
+    private void markVolumeFilledUnbooked(Long reservationId, String tradeRef, BigDecimal totalCost) {
+        try {
+            volumeReservationService.markFilledUnbooked(reservationId, totalCost);
+        } catch (Exception e) {
+            log.error("Failed to mark the volume reservation of unbooked trade {} for reconciliation: {}", tradeRef, e.getMessage());
+        }
+    }
+
+    private void releaseReservation(Long reservationId, String tradeRef) {
+        try {
+            volumeReservationService.release(reservationId);
+        } catch (Exception e) {
+            // Returned by the expiry timer instead
+            log.error("Failed to release the volume reservation of trade {}: {}", tradeRef, e.getMessage());
+        }
+    }
+
+    /**
+     * Waits briefly for a concurrent name lookup; the order has already been
+     * executed, so a failed lookup falls back to the symbol instead of failing.
+     */
+    private String awaitStockName(Future<String> nameLookup, String stockSymbol) {
+        try {
+            String name = nameLookup.get(NAME_LOOKUP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            return name != null ? name : stockSymbol.trim();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Could not look up the name of {}, using the symbol: {}", stockSymbol, e.getMessage());
+        }
+        return stockSymbol.trim();
+    }
+
     /**
      * Sell stocks for a customer
+     * Runs without a transaction: the shares are taken out of the depot and reserved
+     * in a short transaction, the order is executed at the exchange, and a second
+     * short transaction books the proceeds and confirms the reservation. The shares
+     * are put back only if the order was definitely rejected; after any other failure
+     * the exchange may have sold them, so they are kept out for reconciliation.
+     * @return the total proceeds
      */
-    public void sellStocks(String customerNumber, String stockSymbol, Integer quantity) {
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public BigDecimal sellStocks(String customerNumber, String stockSymbol, Integer quantity) {
         log.info("Processing sell order: {} shares of {} for customer {}", quantity, stockSymbol, customerNumber);
 
         if (customerNumber == null || customerNumber.isBlank()) {
@@ -124,27 +237,64 @@ public class BankFacadeService {
             throw new IllegalArgumentException("Customer not found: " + customerNumber);
         }
 
-        // Check if customer has enough stocks
-        if (!depotService.hasEnoughStocks(customer, stockSymbol, quantity)) {
-            throw new IllegalStateException("Customer does not have enough stocks to sell");
-        }
-
-        // Calculate total proceeds
-        BigDecimal totalProceeds = tradingService.sellStocks(stockSymbol, quantity);
+        // Phase 1: take the stocks out of the depot before the order goes to the exchange
+        String tradeRef = UUID.randomUUID().toString();
+        Long reservationId = stockReservationService.reserve(customer, tradeRef, stockSymbol, quantity);
 
-        // Execute trade
+        BigDecimal totalProceeds;
         try {
-            // Remove stocks from customer depot
-            depotService.removeStocks(customer, stockSymbol, quantity);
+            totalProceeds = tradingService.sellStocks(stockSymbol, quantity);
+        } catch (RuntimeException e) {
+            if (TradeFailures.isRejected(e)) {
+                releaseStockReservation(reservationId, tradeRef);
+            } else {
+                // The exchange may have sold the stocks: keep them out of the depot for reconciliation
+                log.error("Outcome of sell trade {} is unknown: {}", tradeRef, e.getMessage());
+                markStocksFilledUnbooked(reservationId, tradeRef);
+            }
+            throw e;
+        }
 
-            // Increase bank volume
-            bankVolumeService.increaseVolume(totalProceeds);
+        // Phase 2: book the proceeds and confirm the reservation
+        try {
+            sessionContext.getBusinessObject(BankFacadeService.class)
+                .bookSell(reservationId, tradeRef, customerNumber, totalProceeds);
 
-            log.info("Successfully sold {} shares of {} for customer {}", quantity, stockSymbol, customerNumber);
+            log.info("Successfully sold {} shares of {} for customer {} (trade {})", quantity, stockSymbol, customerNumber, tradeRef);
+            return totalProceeds;
         } catch (Exception e) {
+            // The exchange executed the order: keep the stocks out of the depot for reconciliation
             log.error("Error during sell transaction", e);
+            markStocksFilledUnbooked(reservationId, tradeRef);
             throw new RuntimeException("Failed to execute sell order: " + e.getMessage(), e);
         }
     }
-}
 
+    private void markStocksFilledUnbooked(Long reservationId, String tradeRef) {
+        try {
+            stockReservationService.markFilledUnbooked(reservationId);
+        } catch (Exception e) {
+            log.error("Failed to mark the stock reservation of unbooked trade {} for reconciliation: {}", tradeRef, e.getMessage());
+        }
+    }
+
+    private void releaseStockReservation(Long reservationId, String tradeRef) {
+        try {
+            stockReservationService.release(reservationId);
+        } catch (Exception e) {
+            // Put back by the expiry timer instead
+            log.error("Failed to put back the reserved stocks of trade {}: {}", tradeRef, e.getMessage());
+        }
+    }
+
+    /**
+     * Second phase of {@link #sellStocks}: books the proceeds and confirms the
+     * reservation in one short transaction; the stocks already left the depot.
+     * Internal use.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void bookSell(Long reservationId, String tradeRef, String customerNumber, BigDecimal totalProceeds) {
+        stockReservationService.confirm(reservationId);
+        bankVolumeService.increaseVolume(customerNumber, tradeRef, totalProceeds);
+    }
+}
@@ -0,0 +1,132 @@
+package net.froihofer.dsfinance.bank.ejb.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.Config;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory copy of the bank volume ledger row.
+ *
+ * Changes made on this node are applied after their transaction committed; changes
+ * made elsewhere are picked up once the copy is older than
+ * {@code bank.volume.cacheMaxAge} ms. A snapshot never replaces one with a higher
+ * ledger version. Only used for reads: volume changes always lock the row.
+ */
+@Singleton
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class BankVolumeCache {
+    private static final long DEFAULT_MAX_AGE_MILLIS = 1_000;
+
+    @Inject
+    private Config config;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private long maxAgeMillis;
+    private volatile int shards = 1;
+
+    @PostConstruct
+    public void init() {
+        maxAgeMillis = getConfig("bank.volume.cacheMaxAge", Long.class)
+            .filter(value -> value >= 0)
+            .orElse(DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    /**
+     * @return the cached ledger row, or empty if there is none or it is too old
+     */
+    public Optional<Snapshot> get() {
+        Snapshot snapshot = current.get();
+        if (snapshot == null || System.currentTimeMillis() - snapshot.loadedAt > maxAgeMillis) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(snapshot);
+    }
+
+    /**
+     * Stores the ledger row as read or committed, unless a newer version is cached.
+     * @return the cached snapshot after the update
+     */
+    public Snapshot update(long version, BigDecimal availableVolume, BigDecimal initialVolume) {
+        Snapshot snapshot = new Snapshot(version, availableVolume, initialVolume, System.currentTimeMillis());
+        return current.accumulateAndGet(snapshot, (cached, loaded) -> cached == null || loaded.version >= cached.version ? loaded : cached);
+    }
+
+    public void invalidate() {
+        current.set(null);
+    }
+
+    /**
+     * Number of volume shards in use; 1 if the ledger row holds the whole volume.
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = Math.max(1, shards);
+    }
+
+    /**
+     * Hit and miss counters.
+     */
+    public Map<String, Object> getStatistics() {
+        Snapshot snapshot = current.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxAgeMillis", maxAgeMillis);
+        stats.put("shards", shards);
+        stats.put("version", snapshot == null ? null : snapshot.version);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+
+    /**
+     * Immutable copy of the ledger row.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final BigDecimal availableVolume;
+        private final BigDecimal initialVolume;
+        private final long loadedAt;
+
+        private Snapshot(long version, BigDecimal availableVolume, BigDecimal initialVolume, long loadedAt) {
+            this.version = version;
+            this.availableVolume = availableVolume;
+            this.initialVolume = initialVolume;
+            this.loadedAt = loadedAt;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public BigDecimal getAvailableVolume() {
+            return availableVolume;
+        }
+
+        public BigDecimal getInitialVolume() {
+            return initialVolume;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package net.froihofer.dsfinance.bank.ejb.service;
+
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Stateless;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import net.froihofer.dsfinance.bank.common.dto.BankVolumeHistoryDTO;
+import net.froihofer.dsfinance.bank.common.dto.BankVolumePointDTO;
+import net.froihofer.dsfinance.bank.ejb.entity.BankVolumeJournalEntry;
+import net.froihofer.dsfinance.bank.ejb.entity.BankVolumeSnapshot;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Service Bean for the append-only journal of bank volume changes.
+ *
+ * Every debit and credit of the volume ledger appends one journal entry in the
+ * trade's transaction. Every five minutes the entries are compacted into a snapshot
+ * of the balance, so the journal balance is the latest snapshot plus the entries
+ * after it, and the volume history is served from snapshots without touching the
+ * ledger row. Entries are only compacted once older than
+ * {@code bank.volume.journal.compactionLag} ms: ids are assigned at insert, not at
+ * commit, so a transaction still running could otherwise commit an entry below a
+ * snapshot's journal id.
+ * @PermitAll allows access from REST endpoints which have their own security
+ */
+@Stateless
+@PermitAll
+public class BankVolumeJournal {
+    private static final Logger log = LoggerFactory.getLogger(BankVolumeJournal.class);
+
+    private static final long DEFAULT_COMPACTION_LAG_MILLIS = 600_000;
+    private static final int DEFAULT_HISTORY_POINTS = 200;
+    private static final int MAX_HISTORY_POINTS = 5_000;
+
+    private static final String INSERT_SNAPSHOT_SQL =
+        "INSERT INTO bank_volume_snapshot (journal_id, balance, as_of) VALUES (:journalId, :balance, :asOf) "
+            + "ON CONFLICT (journal_id) DO NOTHING";
+
+    @PersistenceContext(unitName = "ds-finance-bank-ref-persunit")
+    private EntityManager em;
+
+    @Inject
+    private Config config;
+
+    /**
+     * Appends a volume change to the journal
+     * @param amount signed change: negative for debits, positive for credits
+     */
+    public void append(String tradeRef, String customerNumber, BigDecimal amount) {
+        em.persist(new BankVolumeJournalEntry(tradeRef, customerNumber, amount));
+    }
+
+    /**
+     * Writes the opening snapshot if the journal has none yet, so that the journal
+     * balance starts at the current ledger balance
+     */
+    public void open(BigDecimal balance) {
+        if (findLatestSnapshot().isPresent()) {
+            return;
+        }
+        em.createNativeQuery(INSERT_SNAPSHOT_SQL)
+            .setParameter("journalId", 0L)
+            .setParameter("balance", balance)
+            .setParameter("asOf", OffsetDateTime.now())
+            .executeUpdate();
+        log.info("Bank volume journal opened with a balance of {}", balance);
+    }
+
+    /**
+     * Balance according to the journal: latest snapshot plus the entries after it
+     */
+    public Optional<BigDecimal> getBalance() {
+        return findLatestSnapshot().map(snapshot -> snapshot.getBalance().add(
+            em.createNamedQuery("BankVolumeJournalEntry.sumAfter", BigDecimal.class)
+                .setParameter("after", snapshot.getJournalId())
+                .getSingleResult()));
+    }
+
+    /**
+     * Available volume over time, from the snapshots in the range plus the current
+     * journal balance
+     * @param from epoch millis, optional
+     * @param to epoch millis, optional
+     * @param points maximum number of points, optional
+     */
+    public BankVolumeHistoryDTO getHistory(Long from, Long to, Integer points) {
+        if (from != null && to != null && from > to) {
+            throw new IllegalArgumentException("History range start must not be after its end");
+        }
+        if (points != null && (points <= 0 || points > MAX_HISTORY_POINTS)) {
+            throw new IllegalArgumentException("Number of points must be between 1 and " + MAX_HISTORY_POINTS);
+        }
+        int maxPoints = points != null ? points : DEFAULT_HISTORY_POINTS;
+        long now = System.currentTimeMillis();
+        long start = from != null ? from : 0L;
+        long end = to != null ? to : now;
+
+        List<BankVolumePointDTO> all = new ArrayList<>();
+        for (BankVolumeSnapshot snapshot : em.createNamedQuery("BankVolumeSnapshot.findInRange", BankVolumeSnapshot.class)
+                .setParameter("from", toDateTime(start))
+                .setParameter("to", toDateTime(end))
+                .getResultList()) {
+            all.add(new BankVolumePointDTO(snapshot.getAsOf().toInstant().toEpochMilli(), snapshot.getBalance()));
+        }
+        if (end >= now) {
+            getBalance().ifPresent(balance -> all.add(new BankVolumePointDTO(now, balance)));
+        }
+
+        BankVolumeHistoryDTO history = new BankVolumeHistoryDTO();
+        history.setTotalPoints(all.size());
+        history.setPoints(downsample(all, maxPoints));
+        return history;
+    }
+
+    /**
+     * Compacts the journal entries older than the compaction lag into a new snapshot
+     */
+    @Schedule(hour = "*", minute = "*/5", persistent = false)
+    public void compact() {
+        Optional<BankVolumeSnapshot> latest = findLatestSnapshot();
+        if (latest.isEmpty()) {
+            return;
+        }
+        long lag = getConfig("bank.volume.journal.compactionLag", Long.class)
+            .filter(value -> value >= 0)
+            .orElse(DEFAULT_COMPACTION_LAG_MILLIS);
+        OffsetDateTime cutoff = OffsetDateTime.now().minusNanos(lag * 1_000_000);
+
+        Long upTo = em.createNamedQuery("BankVolumeJournalEntry.maxIdBefore", Long.class)
+            .setParameter("cutoff", cutoff)
+            .getSingleResult();
+        BankVolumeSnapshot snapshot = latest.get();
+        if (upTo == null || upTo <= snapshot.getJournalId()) {
+            return;
+        }
+
+        BigDecimal delta = em.createNamedQuery("BankVolumeJournalEntry.sumBetween", BigDecimal.class)
+            .setParameter("after", snapshot.getJournalId())
+            .setParameter("upTo", upTo)
+            .getSingleResult();
+        BigDecimal balance = snapshot.getBalance().add(delta);
+        // Another node may have written the same snapshot; the unique journal id keeps one
+        em.createNativeQuery(INSERT_SNAPSHOT_SQL)
+            .setParameter("journalId", upTo)
+            .setParameter("balance", balance)
+            .setParameter("asOf", cutoff)
+            .executeUpdate();
+        log.debug("Bank volume snapshot at journal entry {}: {}", upTo, balance);
+    }
+
+    private Optional<BankVolumeSnapshot> findLatestSnapshot() {
+        return em.createNamedQuery("BankVolumeSnapshot.findLatest", BankVolumeSnapshot.class)
+            .setMaxResults(1)
+            .getResultStream()
+            .findFirst();
+    }
+
+    /**
+     * Keeps every n-th point so that at most maxPoints remain; the last point is always kept
+     */
+    private List<BankVolumePointDTO> downsample(List<BankVolumePointDTO> all, int maxPoints) {
+        if (all.size() <= maxPoints) {
+            return all;
+        }
+        if (maxPoints == 1) {
+            return List.of(all.get(all.size() - 1));
+        }
+        List<BankVolumePointDTO> sampled = new ArrayList<>(maxPoints);
+        double stride = (double) (all.size() - 1) / (maxPoints - 1);
+        for (int i = 0; i < maxPoints; i++) {
+            sampled.add(all.get(Math.min(all.size() - 1, (int) Math.round(i * stride))));
+        }
+        return sampled;
+    }
+
+    private OffsetDateTime toDateTime(long epochMillis) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+}
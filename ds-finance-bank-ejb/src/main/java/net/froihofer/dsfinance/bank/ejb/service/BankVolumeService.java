@@ -1,20 +1,36 @@
 package net.froihofer.dsfinance.bank.ejb.service;
 
+import jakarta.annotation.Resource;
 import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
-import jakarta.persistence.TypedQuery;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 import net.froihofer.dsfinance.bank.ejb.entity.BankVolume;
 import net.froihofer.dsfinance.bank.common.dto.BankVolumeDTO;
+import net.froihofer.dsfinance.bank.common.dto.BankVolumeHistoryDTO;
+import org.eclipse.microprofile.config.Config;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Service Bean for managing Bank's investable volume
+ * The volume is a single-row ledger (see {@link BankVolume#LEDGER_ID}): reads are
+ * served from the {@link BankVolumeCache} or one primary key lookup, changes are
+ * single conditional UPDATE statements and update the cache once committed.
+ * With {@code bank.volume.shards} &gt; 1 the available volume is split across that
+ * many rows of {@code bank_volume_shard}, so concurrent trades update different
+ * rows; the ledger row then only keeps the initial volume.
  * Methods are @PermitAll to allow startup initialization without authentication
  */
 @Stateless
@@ -25,19 +41,71 @@ public class BankVolumeService {
     @PersistenceContext(unitName = "ds-finance-bank-ref-persunit")
     private EntityManager em;
 
+    @Resource
+    private TransactionSynchronizationRegistry transactionRegistry;
+
+    @EJB
+    private BankVolumeCache volumeCache;
+
+    @EJB
+    private BankVolumeJournal journal;
+
+    @Inject
+    private Config config;
+
     private static final BigDecimal INITIAL_VOLUME = new BigDecimal("1000000000.00"); // 1 billion
 
+    // Single round trip: the row lock is only taken if enough volume is available
+    private static final String RESERVE_SQL =
+        "UPDATE bank_volume SET available_volume = available_volume - :amount, version = version + 1 "
+            + "WHERE id = :id AND available_volume >= :amount "
+            + "RETURNING available_volume, initial_volume, version";
+    private static final String OVERDRAW_SQL =
+        "UPDATE bank_volume SET available_volume = available_volume - :amount, version = version + 1 "
+            + "WHERE id = :id "
+            + "RETURNING available_volume, initial_volume, version";
+    private static final String CREDIT_SQL =
+        "UPDATE bank_volume SET available_volume = available_volume + :amount, version = version + 1 "
+            + "WHERE id = :id "
+            + "RETURNING available_volume, initial_volume, version";
+
+    // Sharded mode (bank.volume.shards > 1): the available volume lives in bank_volume_shard
+    private static final String SHARD_RESERVE_SQL =
+        "UPDATE bank_volume_shard SET available_volume = available_volume - :amount, version = version + 1 "
+            + "WHERE shard_id = :shard AND available_volume >= :amount";
+    private static final String SHARD_CREDIT_SQL =
+        "UPDATE bank_volume_shard SET available_volume = available_volume + :amount, version = version + 1 "
+            + "WHERE shard_id = :shard";
+    private static final String SHARD_REBALANCE_HALF_SQL = shardRebalanceSql("TRUNC(available_volume / 2, 2)");
+    private static final String SHARD_REBALANCE_ALL_SQL = shardRebalanceSql("available_volume");
+    private static final String AGGREGATE_SQL =
+        "SELECT b.available_volume + COALESCE((SELECT SUM(s.available_volume) FROM bank_volume_shard s), 0), "
+            + "b.initial_volume, b.version FROM bank_volume b WHERE b.id = :id";
+    private static final String FOLD_SHARDS_SQL =
+        "WITH drained AS (DELETE FROM bank_volume_shard RETURNING available_volume) "
+            + "UPDATE bank_volume SET available_volume = available_volume + (SELECT COALESCE(SUM(available_volume), 0) FROM drained), "
+            + "version = version + 1 WHERE id = :id";
+    private static final String LOCK_LEDGER_SQL =
+        "SELECT available_volume FROM bank_volume WHERE id = :id FOR UPDATE";
+    private static final String COUNT_SHARDS_SQL =
+        "SELECT COUNT(*) FROM bank_volume_shard";
+    private static final String INSERT_SHARD_SQL =
+        "INSERT INTO bank_volume_shard (shard_id, available_volume, version) VALUES (:shard, :amount, 0)";
+    private static final String DEBIT_LEDGER_SQL =
+        "UPDATE bank_volume SET available_volume = available_volume - :amount, version = version + 1 WHERE id = :id";
+
     /**
      * Initialize bank volume if not exists
      * @return the initialized or existing bank volume
      */
     public BankVolume initializeBankVolume() {
-        BankVolume volume = getCurrentBankVolume();
+        BankVolume volume = em.find(BankVolume.class, BankVolume.LEDGER_ID);
         if (volume == null) {
             log.info("Initializing bank volume with {} USD", INITIAL_VOLUME);
             volume = new BankVolume(INITIAL_VOLUME);
             em.persist(volume);
             em.flush(); // Force immediate persistence
+            publishAfterCommit(volume);
             log.info("Bank volume initialized successfully");
         } else {
             log.debug("Bank volume already exists");
@@ -49,73 +117,321 @@ public class BankVolumeService {
      * Get current bank volume
      */
     public BankVolumeDTO getBankVolume() {
-        BankVolume volume = getCurrentBankVolume();
+        BankVolumeCache.Snapshot volume = getCurrentBankVolume();
         if (volume == null) {
             log.warn("Bank volume not found, initializing...");
-            volume = initializeBankVolume();
+            BankVolume initialized = initializeBankVolume();
+            return new BankVolumeDTO(initialized.getAvailableVolume(), initialized.getInitialVolume());
         }
 
-        if (volume == null) {
-            throw new IllegalStateException("Failed to initialize bank volume");
+        return new BankVolumeDTO(volume.getAvailableVolume(), volume.getInitialVolume());
+    }
+
+    /**
+     * Atomically takes the amount from the available volume if enough is left.
+     * One conditional UPDATE: concurrent reservations never overdraw the ledger and
+     * never wait for a read-check-write cycle of another transaction.
+     * Journaled for the customer's trade; in sharded mode the customer number
+     * selects the shard to take the amount from.
+     * @return true if the amount was reserved, false if the volume is insufficient
+     */
+    public boolean reserveVolume(String customerNumber, String tradeRef, BigDecimal amount) {
+        validateAmount(amount);
+        int shards = volumeCache.getShards();
+        boolean reserved = shards > 1
+            ? reserveFromShard(shardOf(customerNumber, shards), amount)
+            : updateVolume(RESERVE_SQL, amount).isPresent();
+        if (!reserved) {
+            log.info("Bank volume reservation of {} rejected: insufficient volume", amount);
+            return false;
         }
+        journal.append(tradeRef, customerNumber, amount.negate());
+        log.info("Reserved {} of bank volume", amount);
+        return true;
+    }
 
-        return toDTO(volume);
+    /**
+     * Increase available volume (after selling stocks)
+     */
+    public void increaseVolume(BigDecimal amount) {
+        increaseVolume(null, null, amount);
     }
 
     /**
-     * Decrease available volume (after buying stocks)
+     * Like {@link #increaseVolume(BigDecimal)}, journaled for the customer's trade.
+     * In sharded mode the customer number selects the shard to credit.
      */
-    public void decreaseVolume(BigDecimal amount) {
-        log.info("Decreasing bank volume by: {}", amount);
-        BankVolume volume = getCurrentBankVolume();
-        if (volume == null) {
+    public void increaseVolume(String customerNumber, String tradeRef, BigDecimal amount) {
+        log.info("Increasing bank volume by: {}", amount);
+        validateAmount(amount);
+        int shards = volumeCache.getShards();
+        if (shards > 1) {
+            if (updateShard(SHARD_CREDIT_SQL, shardOf(customerNumber, shards), amount) == 0) {
+                throw new IllegalStateException("Bank volume shard not initialized");
+            }
+        } else if (updateVolume(CREDIT_SQL, amount).isEmpty()) {
             throw new IllegalStateException("Bank volume not initialized");
         }
+        journal.append(tradeRef, customerNumber, amount);
+    }
+
+    /**
+     * Starts the volume journal at the current balance unless it was started before.
+     * Called at startup.
+     */
+    public void openJournal() {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = em.createNativeQuery(AGGREGATE_SQL)
+            .setParameter("id", BankVolume.LEDGER_ID)
+            .getResultList();
+        if (!rows.isEmpty()) {
+            journal.open((BigDecimal) rows.get(0)[0]);
+        }
+    }
 
-        volume.decreaseVolume(amount);
-        em.merge(volume);
+    /**
+     * Available volume over time, from the volume journal
+     */
+    public BankVolumeHistoryDTO getVolumeHistory(Long from, Long to, Integer points) {
+        return journal.getHistory(from, to, points);
     }
 
     /**
-     * Increase available volume (after selling stocks)
+     * Takes the amount from the ledger row even if that leaves the available volume
+     * negative. Only for fills that exceed their reservation: the exchange has
+     * already executed them, so they must be booked.
      */
-    public void increaseVolume(BigDecimal amount) {
-        log.info("Increasing bank volume by: {}", amount);
-        BankVolume volume = getCurrentBankVolume();
-        if (volume == null) {
+    public void overdrawVolume(String customerNumber, String tradeRef, BigDecimal amount) {
+        log.warn("Overdrawing bank volume by {} for trade {}", amount, tradeRef);
+        validateAmount(amount);
+        if (updateVolume(OVERDRAW_SQL, amount).isEmpty()) {
             throw new IllegalStateException("Bank volume not initialized");
         }
+        journal.append(tradeRef, customerNumber, amount.negate());
+    }
+
+    /**
+     * Splits the available volume into {@code bank.volume.shards} shard rows, or
+     * folds the shards back into the ledger row if sharding is off. Called at
+     * startup; all nodes must use the same shard count. The shards are only
+     * re-split if the stored shard count differs from the configured one, under
+     * the ledger row lock, so starting nodes neither repeat nor race the split.
+     */
+    public void configureShards() {
+        int shards = getConfig("bank.volume.shards", Integer.class)
+            .filter(value -> value > 0)
+            .orElse(1);
+
+        em.createNativeQuery(LOCK_LEDGER_SQL)
+            .setParameter("id", BankVolume.LEDGER_ID)
+            .getSingleResult();
+        int stored = ((Number) em.createNativeQuery(COUNT_SHARDS_SQL).getSingleResult()).intValue();
+        if (stored == (shards > 1 ? shards : 0)) {
+            log.debug("Bank volume already split across {} shard(s)", stored);
+        } else {
+            splitShards(shards);
+        }
+
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    volumeCache.setShards(shards);
+                }
+                volumeCache.invalidate();
+            }
+        });
+    }
 
-        volume.increaseVolume(amount);
-        em.merge(volume);
+    /**
+     * Folds the existing shards back into the ledger row and splits it into the
+     * given number of shards; caller holds the ledger row lock
+     */
+    private void splitShards(int shards) {
+        em.createNativeQuery(FOLD_SHARDS_SQL)
+            .setParameter("id", BankVolume.LEDGER_ID)
+            .executeUpdate();
+
+        if (shards > 1) {
+            BigDecimal available = (BigDecimal) em.createNativeQuery(LOCK_LEDGER_SQL)
+                .setParameter("id", BankVolume.LEDGER_ID)
+                .getSingleResult();
+            BigDecimal share = available.divide(BigDecimal.valueOf(shards), 2, RoundingMode.DOWN);
+            BigDecimal remainder = available.subtract(share.multiply(BigDecimal.valueOf(shards)));
+            for (int shard = 0; shard < shards; shard++) {
+                em.createNativeQuery(INSERT_SHARD_SQL)
+                    .setParameter("shard", shard)
+                    .setParameter("amount", shard == 0 ? share.add(remainder) : share)
+                    .executeUpdate();
+            }
+            em.createNativeQuery(DEBIT_LEDGER_SQL)
+                .setParameter("amount", available)
+                .setParameter("id", BankVolume.LEDGER_ID)
+                .executeUpdate();
+            log.info("Bank volume of {} split across {} shards", available, shards);
+        } else {
+            log.info("Bank volume shards folded back into the ledger row");
+        }
     }
 
     /**
-     * Check if there's enough volume for a purchase
+     * Get current bank volume (internal use): cached, or loaded by primary key
      */
-    public boolean hasEnoughVolume(BigDecimal requiredAmount) {
-        BankVolume volume = getCurrentBankVolume();
+    private BankVolumeCache.Snapshot getCurrentBankVolume() {
+        Optional<BankVolumeCache.Snapshot> cached = volumeCache.get();
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        if (volumeCache.getShards() > 1) {
+            // Ledger row plus all shards in one statement, so the sum is consistent
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = em.createNativeQuery(AGGREGATE_SQL)
+                .setParameter("id", BankVolume.LEDGER_ID)
+                .getResultList();
+            if (rows.isEmpty()) {
+                return null;
+            }
+            Object[] row = rows.get(0);
+            return volumeCache.update(((Number) row[2]).longValue(), (BigDecimal) row[0], (BigDecimal) row[1]);
+        }
+        BankVolume volume = em.find(BankVolume.class, BankVolume.LEDGER_ID);
         if (volume == null) {
-            return false;
+            return null;
         }
+        return volumeCache.update(volume.getVersion(), volume.getAvailableVolume(), volume.getInitialVolume());
+    }
 
-        return volume.getAvailableVolume().compareTo(requiredAmount) >= 0;
+    /**
+     * Takes the amount from the shard. If the shard has run dry, it is refilled with
+     * half of every other shard and, if that is still not enough, with all of them.
+     */
+    private boolean reserveFromShard(int shard, BigDecimal amount) {
+        if (updateShard(SHARD_RESERVE_SQL, shard, amount) > 0) {
+            return true;
+        }
+        for (String rebalance : new String[] {SHARD_REBALANCE_HALF_SQL, SHARD_REBALANCE_ALL_SQL}) {
+            log.debug("Bank volume shard {} cannot cover {}, rebalancing", shard, amount);
+            em.createNativeQuery(rebalance)
+                .setParameter("shard", shard)
+                .executeUpdate();
+            if (updateShard(SHARD_RESERVE_SQL, shard, amount) > 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Get current bank volume entity (internal use)
+     * Runs a single-statement shard update; the cached aggregate is dropped once committed
+     * @return the number of updated rows
      */
-    private BankVolume getCurrentBankVolume() {
-        TypedQuery<BankVolume> query = em.createNamedQuery("BankVolume.findCurrent", BankVolume.class);
-        List<BankVolume> volumes = query.getResultList();
-        return volumes.isEmpty() ? null : volumes.get(0);
+    private int updateShard(String sql, int shard, BigDecimal amount) {
+        int updated = em.createNativeQuery(sql)
+            .setParameter("amount", amount)
+            .setParameter("shard", shard)
+            .executeUpdate();
+        if (updated > 0) {
+            invalidateAfterCommit();
+        }
+        return updated;
+    }
+
+    private int shardOf(String routingKey, int shards) {
+        return routingKey == null
+            ? ThreadLocalRandom.current().nextInt(shards)
+            : Math.floorMod(routingKey.hashCode(), shards);
     }
 
     /**
-     * Convert entity to DTO
+     * Runs a single-statement volume update and publishes the resulting ledger row
+     * @return available volume, initial volume and version after the update, or
+     *         empty if no row matched
      */
-    private BankVolumeDTO toDTO(BankVolume volume) {
-        return new BankVolumeDTO(volume.getAvailableVolume(), volume.getInitialVolume());
+    private Optional<Object[]> updateVolume(String sql, BigDecimal amount) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = em.createNativeQuery(sql)
+            .setParameter("amount", amount)
+            .setParameter("id", BankVolume.LEDGER_ID)
+            .getResultList();
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        Object[] row = rows.get(0);
+        if (volumeCache.getShards() > 1) {
+            // The ledger row alone is not the available volume
+            invalidateAfterCommit();
+        } else {
+            publishAfterCommit(((Number) row[2]).longValue(), (BigDecimal) row[0], (BigDecimal) row[1]);
+        }
+        return Optional.of(row);
     }
-}
 
+    /**
+     * Drop the cached volume once the current transaction completed
+     */
+    private void invalidateAfterCommit() {
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                volumeCache.invalidate();
+            }
+        });
+    }
+
+    /**
+     * Moves {@code movedExpression} of every other shard into shard {@code :shard}.
+     * All shard rows, the target included, are locked in shard_id order first, so
+     * concurrent rebalances cannot deadlock.
+     */
+    private static String shardRebalanceSql(String movedExpression) {
+        return "WITH locked AS (SELECT shard_id, available_volume FROM bank_volume_shard ORDER BY shard_id FOR UPDATE), "
+            + "donors AS (SELECT shard_id, " + movedExpression + " AS moved FROM locked "
+            + "WHERE shard_id <> :shard AND available_volume > 0), "
+            + "taken AS (UPDATE bank_volume_shard s SET available_volume = s.available_volume - d.moved, version = s.version + 1 "
+            + "FROM donors d WHERE s.shard_id = d.shard_id RETURNING d.moved) "
+            + "UPDATE bank_volume_shard SET available_volume = available_volume + (SELECT COALESCE(SUM(moved), 0) FROM taken), "
+            + "version = version + 1 WHERE shard_id = :shard";
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+
+    private void validateAmount(BigDecimal amount) {
+        if (amount == null || amount.signum() < 0) {
+            throw new IllegalArgumentException("Amount must not be negative");
+        }
+    }
+
+    /**
+     * Update the cache with the ledger row once the current transaction committed
+     */
+    private void publishAfterCommit(BankVolume volume) {
+        publishAfterCommit(volume.getVersion(), volume.getAvailableVolume(), volume.getInitialVolume());
+    }
+
+    private void publishAfterCommit(long version, BigDecimal availableVolume, BigDecimal initialVolume) {
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    volumeCache.update(version, availableVolume, initialVolume);
+                } else {
+                    volumeCache.invalidate();
+                }
+            }
+        });
+    }
+}
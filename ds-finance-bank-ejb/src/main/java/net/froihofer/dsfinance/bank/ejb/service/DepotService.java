@@ -1,21 +1,27 @@
 package net.froihofer.dsfinance.bank.ejb.service;
 
+import jakarta.annotation.Resource;
 import jakarta.annotation.security.PermitAll;
 import jakarta.ejb.EJB;
+import jakarta.ejb.Schedule;
 import jakarta.ejb.Stateless;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 import net.froihofer.dsfinance.bank.ejb.entity.Customer;
 import net.froihofer.dsfinance.bank.ejb.entity.DepotPosition;
+import net.froihofer.dsfinance.bank.ejb.trading.QuoteCache;
 import net.froihofer.dsfinance.bank.common.dto.DepotDTO;
-import net.froihofer.dsfinance.bank.common.dto.DepotPositionDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Optional;
 
 /**
  * Service Bean for Depot Management
@@ -26,113 +32,149 @@ import java.util.stream.Collectors;
 public class DepotService {
     private static final Logger log = LoggerFactory.getLogger(DepotService.class);
 
+    // Replaces a name stored as the symbol, i.e. a position opened while the name was unknown
+    private static final String UPSERT_POSITION_SQL =
+        "INSERT INTO depot_position (customer_id, stock_symbol, stock_name, quantity) "
+            + "VALUES (:customerId, :stockSymbol, :stockName, :quantity) "
+            + "ON CONFLICT (customer_id, stock_symbol) DO UPDATE SET quantity = depot_position.quantity + EXCLUDED.quantity, "
+            + "stock_name = CASE WHEN depot_position.stock_name = depot_position.stock_symbol "
+            + "AND EXCLUDED.stock_name <> EXCLUDED.stock_symbol THEN EXCLUDED.stock_name ELSE depot_position.stock_name END "
+            + "RETURNING id";
+
+    private static final String REMOVE_STOCKS_SQL =
+        "UPDATE depot_position SET quantity = quantity - :quantity "
+            + "WHERE customer_id = :customerId AND stock_symbol = :stockSymbol AND quantity >= :quantity "
+            + "RETURNING id";
+
     @PersistenceContext(unitName = "ds-finance-bank-ref-persunit")
     private EntityManager em;
 
     @EJB
     private TradingService tradingService;
 
+    @EJB
+    private DepotValuationCache valuationCache;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionRegistry;
+
     /**
-     * Get depot for a customer with current stock prices
+     * Get depot for a customer with current stock prices.
+     * Served from the {@link DepotValuationCache}; on a miss the positions are read
+     * and only prices not known yet are fetched from the trading service.
      */
     public DepotDTO getDepot(Customer customer) {
         log.debug("Getting depot for customer: {}", customer.getCustomerNumber());
 
+        Optional<DepotDTO> cached = valuationCache.getDepot(customer.getCustomerNumber());
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        long token = valuationCache.beginLoad(customer.getCustomerNumber());
         TypedQuery<DepotPosition> query = em.createNamedQuery("DepotPosition.findByCustomer", DepotPosition.class);
         query.setParameter("customerId", customer.getId());
 
-        List<DepotPosition> positions = query.getResultList();
-
-        DepotDTO depotDTO = new DepotDTO();
-        depotDTO.setCustomerId(customer.getId());
-        depotDTO.setCustomerNumber(customer.getCustomerNumber());
-
-        BigDecimal totalValue = BigDecimal.ZERO;
-
-        for (DepotPosition position : positions) {
+        Map<String, DepotValuationCache.Position> positions = new LinkedHashMap<>();
+        for (DepotPosition position : query.getResultList()) {
             if (position.getQuantity() > 0) {
-                // Get current price from trading service
-                BigDecimal currentPrice = tradingService.getStockPrice(position.getStockSymbol());
-
-                DepotPositionDTO positionDTO = new DepotPositionDTO(
-                    position.getStockSymbol(),
-                    position.getStockName(),
-                    position.getQuantity(),
-                    currentPrice
-                );
-
-                depotDTO.getPositions().add(positionDTO);
-                totalValue = totalValue.add(positionDTO.getTotalValue());
+                positions.merge(QuoteCache.key(position.getStockSymbol()), new DepotValuationCache.Position(
+                    position.getStockSymbol().trim(), position.getStockName(), position.getQuantity()), DepotValuationCache.Position::plus);
             }
         }
 
-        depotDTO.setTotalValue(totalValue);
+        // Fetch the missing and outdated prices in one batched trading service call.
+        // Fetched quotes reach the valuation cache as they are cached; quotes served
+        // from the quote cache are confirmed here
+        List<String> missing = valuationCache.missingPrices(positions.keySet());
+        if (!missing.isEmpty()) {
+            tradingService.getStockPrices(missing).forEach(valuationCache::confirmPrice);
+        }
 
-        return depotDTO;
+        return valuationCache.load(customer.getId(), customer.getCustomerNumber(), positions, token);
     }
 
     /**
-     * Add stocks to depot (after buying)
+     * Add stocks to depot (after buying).
+     * One upsert statement: concurrent first buys of a symbol add up instead of
+     * one of them failing on the unique (customer, symbol) constraint.
      */
     public void addStocks(Customer customer, String stockSymbol, String stockName, Integer quantity) {
         log.info("Adding {} shares of {} to customer {}", quantity, stockSymbol, customer.getCustomerNumber());
 
-        DepotPosition position = findPosition(customer, stockSymbol);
+        Number id = (Number) em.createNativeQuery(UPSERT_POSITION_SQL)
+            .setParameter("customerId", customer.getId())
+            .setParameter("stockSymbol", stockSymbol)
+            .setParameter("stockName", stockName)
+            .setParameter("quantity", quantity)
+            .getSingleResult();
 
-        if (position == null) {
-            // Create new position
-            position = new DepotPosition(customer, stockSymbol, stockName, quantity);
-            em.persist(position);
-        } else {
-            // Update existing position
-            position.addQuantity(quantity);
-            em.merge(position);
-        }
+        refreshIfLoaded(id);
+        applyAfterCommit(customer, stockSymbol, stockName, quantity);
     }
 
     /**
-     * Remove stocks from depot (after selling)
+     * Remove stocks from depot (before selling).
+     * One conditional update, so concurrent sells cannot oversell. A position sold
+     * down to zero stays in place until {@link #purgeEmptyPositions}, which lets a
+     * failed sell put the stocks back on the same row.
+     * @return false if the customer does not hold enough stocks
      */
     public boolean removeStocks(Customer customer, String stockSymbol, Integer quantity) {
         log.info("Removing {} shares of {} from customer {}", quantity, stockSymbol, customer.getCustomerNumber());
 
-        DepotPosition position = findPosition(customer, stockSymbol);
-
-        if (position == null || position.getQuantity() < quantity) {
-            log.warn("Insufficient stocks to sell. Available: {}, Requested: {}",
-                    position != null ? position.getQuantity() : 0, quantity);
+        List<?> updated = em.createNativeQuery(REMOVE_STOCKS_SQL)
+            .setParameter("customerId", customer.getId())
+            .setParameter("stockSymbol", stockSymbol)
+            .setParameter("quantity", quantity)
+            .getResultList();
+        if (updated.isEmpty()) {
+            log.warn("Insufficient stocks to sell. Requested: {} shares of {}", quantity, stockSymbol);
             return false;
         }
 
-        position.subtractQuantity(quantity);
-
-        if (position.getQuantity() == 0) {
-            em.remove(position);
-        } else {
-            em.merge(position);
-        }
-
+        refreshIfLoaded((Number) updated.get(0));
+        applyAfterCommit(customer, stockSymbol, null, -quantity);
         return true;
     }
 
     /**
-     * Check if customer has enough stocks to sell
+     * Deletes the positions sold down to zero
      */
-    public boolean hasEnoughStocks(Customer customer, String stockSymbol, Integer quantity) {
-        DepotPosition position = findPosition(customer, stockSymbol);
-        return position != null && position.getQuantity() >= quantity;
+    @Schedule(hour = "*", minute = "*/10", persistent = false)
+    public void purgeEmptyPositions() {
+        int purged = em.createNamedQuery("DepotPosition.deleteEmpty").executeUpdate();
+        if (purged > 0) {
+            log.debug("Purged {} empty depot position(s)", purged);
+        }
     }
 
     /**
-     * Find depot position for customer and stock (internal use)
+     * Apply the position change to the cached valuation once the trade committed
      */
-    private DepotPosition findPosition(Customer customer, String stockSymbol) {
-        TypedQuery<DepotPosition> query = em.createNamedQuery("DepotPosition.findByCustomerAndStock", DepotPosition.class);
-        query.setParameter("customerId", customer.getId());
-        query.setParameter("stockSymbol", stockSymbol);
+    private void applyAfterCommit(Customer customer, String stockSymbol, String stockName, int quantityChange) {
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
 
-        List<DepotPosition> positions = query.getResultList();
-        return positions.isEmpty() ? null : positions.get(0);
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    valuationCache.applyTrade(customer.getCustomerNumber(), stockSymbol.trim(), stockName, quantityChange);
+                }
+            }
+        });
     }
-}
 
+    /**
+     * Refresh the position if it is loaded in this persistence context, as a native
+     * statement changed its row
+     */
+    private void refreshIfLoaded(Number id) {
+        DepotPosition position = em.getReference(DepotPosition.class, id.longValue());
+        if (em.getEntityManagerFactory().getPersistenceUnitUtil().isLoaded(position)) {
+            em.refresh(position);
+        }
+    }
+}
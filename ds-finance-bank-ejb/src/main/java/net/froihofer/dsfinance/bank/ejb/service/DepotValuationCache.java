@@ -0,0 +1,360 @@
+package net.froihofer.dsfinance.bank.ejb.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import net.froihofer.dsfinance.bank.common.dto.DepotDTO;
+import net.froihofer.dsfinance.bank.common.dto.DepotPositionDTO;
+import net.froihofer.dsfinance.bank.ejb.trading.QuoteCache;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Materialized depot valuations.
+ *
+ * Holds the positions of recently read depots, the latest price of every symbol
+ * they contain and each depot's total value. Totals are maintained incrementally:
+ * a new quote adds quantity x price change to every depot holding the symbol, and
+ * a committed trade adds quantity change x price to the customer's depot. Reading
+ * a cached depot is a memory read over its positions.
+ *
+ * Positions are re-read from the database after {@code depot.valuation.maxAge} ms,
+ * so trades booked on other nodes are picked up; at most
+ * {@code depot.valuation.maxDepots} depots are kept (least recently read first out).
+ * Prices arrive with every quote the {@link TradingService} fetches; the symbols held
+ * by cached depots are re-fetched every minute.
+ */
+@Singleton
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class DepotValuationCache {
+    private static final Logger log = LoggerFactory.getLogger(DepotValuationCache.class);
+
+    private static final long DEFAULT_MAX_AGE_MILLIS = 60_000;
+    private static final int DEFAULT_MAX_DEPOTS = 10_000;
+
+    @EJB
+    private TradingService tradingService;
+
+    @Inject
+    private Config config;
+
+    private final Object lock = new Object();
+    // guarded by lock; access order, so the least recently read depot is evicted first
+    private final LinkedHashMap<String, Depot> depots = new LinkedHashMap<>(256, 0.75f, true);
+    // guarded by lock; symbol -> customer numbers of cached depots holding it
+    private final Map<String, Set<String>> holders = new HashMap<>();
+    private final ConcurrentHashMap<String, Price> prices = new ConcurrentHashMap<>();
+    // customer number -> sequence number of the customer's last trade
+    private final ConcurrentHashMap<String, Long> lastTrades = new ConcurrentHashMap<>();
+    private final AtomicLong tradeSequence = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong priceUpdates = new AtomicLong();
+    private final AtomicLong tradeUpdates = new AtomicLong();
+
+    private long maxAgeMillis;
+    private int maxDepots;
+
+    @PostConstruct
+    public void init() {
+        maxAgeMillis = getConfig("depot.valuation.maxAge", Long.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_MAX_AGE_MILLIS);
+        maxDepots = getConfig("depot.valuation.maxDepots", Integer.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_MAX_DEPOTS);
+    }
+
+    /**
+     * @return the cached valuation of the depot, or empty if it is not cached or too old
+     */
+    public Optional<DepotDTO> getDepot(String customerNumber) {
+        synchronized (lock) {
+            Depot depot = depots.get(customerNumber);
+            if (depot == null || System.currentTimeMillis() - depot.loadedAt > maxAgeMillis) {
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+            hits.incrementAndGet();
+            return Optional.of(depot.toDTO());
+        }
+    }
+
+    /**
+     * Marks the start of loading a depot from the database
+     * @return token to pass to {@link #load}
+     */
+    public long beginLoad(String customerNumber) {
+        return lastTrades.getOrDefault(customerNumber, 0L);
+    }
+
+    /**
+     * @return the symbols of which no price is known yet or whose price was
+     *         received more than {@code depot.valuation.maxAge} ms ago
+     */
+    public List<String> missingPrices(Collection<String> symbols) {
+        long threshold = System.currentTimeMillis() - maxAgeMillis;
+        return symbols.stream()
+            .filter(symbol -> {
+                Price price = prices.get(QuoteCache.key(symbol));
+                return price == null || price.receivedAt < threshold;
+            })
+            .distinct()
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Values the positions read from the database. The depot is cached unless the
+     * customer traded since {@link #beginLoad}, in which case the positions may
+     * already be outdated.
+     * @param positions {@link QuoteCache#key} of the symbol -> position; every symbol
+     *                  must have a known price
+     */
+    public DepotDTO load(Long customerId, String customerNumber, Map<String, Position> positions, long token) {
+        Depot depot = new Depot(customerId, customerNumber);
+        synchronized (lock) {
+            for (Map.Entry<String, Position> entry : positions.entrySet()) {
+                Price price = prices.get(entry.getKey());
+                if (price == null) {
+                    throw new IllegalArgumentException("No quote found for symbol " + entry.getValue().symbol);
+                }
+                depot.positions.put(entry.getKey(), entry.getValue());
+                depot.total = depot.total.add(price.value.multiply(BigDecimal.valueOf(entry.getValue().quantity)));
+            }
+            if (lastTrades.getOrDefault(customerNumber, 0L) == token) {
+                evict(customerNumber);
+                depots.put(customerNumber, depot);
+                depot.positions.keySet().forEach(symbol -> holders.computeIfAbsent(symbol, key -> new HashSet<>()).add(customerNumber));
+                evictEldest();
+            }
+            return depot.toDTO();
+        }
+    }
+
+    /**
+     * Records a new price and adds quantity x price change to every cached depot
+     * holding the symbol.
+     */
+    public void updatePrice(String symbol, BigDecimal value, long updatedAt) {
+        if (symbol == null || value == null) {
+            return;
+        }
+        String key = QuoteCache.key(symbol);
+        synchronized (lock) {
+            Price previous = prices.get(key);
+            if (previous != null && previous.updatedAt > updatedAt) {
+                return;
+            }
+            prices.put(key, new Price(value, updatedAt));
+            if (previous == null || previous.value.compareTo(value) == 0) {
+                return;
+            }
+            priceUpdates.incrementAndGet();
+            BigDecimal change = value.subtract(previous.value);
+            for (String customerNumber : holders.getOrDefault(key, Set.of())) {
+                Depot depot = depots.get(customerNumber);
+                Position position = depot == null ? null : depot.positions.get(key);
+                if (position != null) {
+                    depot.total = depot.total.add(change.multiply(BigDecimal.valueOf(position.quantity)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Records a price whose trade time is not known, e.g. one served from the quote
+     * cache: renews its age without letting it win over newer quotes.
+     */
+    public void confirmPrice(String symbol, BigDecimal value) {
+        if (symbol == null) {
+            return;
+        }
+        Price previous = prices.get(QuoteCache.key(symbol));
+        updatePrice(symbol, value, previous == null ? 0 : previous.updatedAt);
+    }
+
+    /**
+     * Applies a committed trade: adds quantity change x price to the customer's depot.
+     * A depot the trade does not fit, e.g. because the symbol has no known price, is
+     * dropped and re-read on the next access.
+     * @param quantityChange shares bought (positive) or sold (negative)
+     */
+    public void applyTrade(String customerNumber, String symbol, String name, int quantityChange) {
+        lastTrades.put(customerNumber, tradeSequence.incrementAndGet());
+        String key = QuoteCache.key(symbol);
+        synchronized (lock) {
+            Depot depot = depots.get(customerNumber);
+            if (depot == null) {
+                return;
+            }
+            Price price = prices.get(key);
+            Position position = depot.positions.get(key);
+            int quantity = (position == null ? 0 : position.quantity) + quantityChange;
+            if (price == null || quantity < 0) {
+                evict(customerNumber);
+                return;
+            }
+            tradeUpdates.incrementAndGet();
+            if (quantity == 0) {
+                depot.positions.remove(key);
+                Set<String> symbolHolders = holders.get(key);
+                if (symbolHolders != null) {
+                    symbolHolders.remove(customerNumber);
+                    if (symbolHolders.isEmpty()) {
+                        holders.remove(key);
+                    }
+                }
+            } else if (position == null) {
+                depot.positions.put(key, new Position(symbol, name, quantity));
+                holders.computeIfAbsent(key, k -> new HashSet<>()).add(customerNumber);
+            } else {
+                depot.positions.put(key, new Position(position.symbol, name != null ? name : position.name, quantity));
+            }
+            depot.total = depot.total.add(price.value.multiply(BigDecimal.valueOf(quantityChange)));
+        }
+    }
+
+    /**
+     * Re-fetches the quotes of the symbols held by cached depots
+     */
+    @Schedule(hour = "*", minute = "*", persistent = false)
+    public void refreshPrices() {
+        Set<String> symbols;
+        synchronized (lock) {
+            symbols = new HashSet<>(holders.keySet());
+        }
+        if (symbols.isEmpty()) {
+            return;
+        }
+        log.debug("Refreshing {} depot stock quote(s)", symbols.size());
+        tradingService.refreshQuotes(symbols);
+    }
+
+    /**
+     * Depot and update counters.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (lock) {
+            stats.put("depots", depots.size());
+            stats.put("heldSymbols", holders.size());
+        }
+        stats.put("prices", prices.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("priceUpdates", priceUpdates.get());
+        stats.put("tradeUpdates", tradeUpdates.get());
+        return stats;
+    }
+
+    // caller holds lock
+    private void evict(String customerNumber) {
+        Depot depot = depots.remove(customerNumber);
+        if (depot == null) {
+            return;
+        }
+        for (String symbol : depot.positions.keySet()) {
+            Set<String> symbolHolders = holders.get(symbol);
+            if (symbolHolders != null) {
+                symbolHolders.remove(customerNumber);
+                if (symbolHolders.isEmpty()) {
+                    holders.remove(symbol);
+                }
+            }
+        }
+    }
+
+    // caller holds lock
+    private void evictEldest() {
+        while (depots.size() > maxDepots) {
+            evict(depots.keySet().iterator().next());
+        }
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+
+    /**
+     * Symbol as stored, name and quantity of one position.
+     */
+    public static final class Position {
+        private final String symbol;
+        private final String name;
+        private final int quantity;
+
+        public Position(String symbol, String name, int quantity) {
+            this.symbol = symbol;
+            this.name = name;
+            this.quantity = quantity;
+        }
+
+        /**
+         * The same position with the quantity of another row of the same symbol added
+         */
+        public Position plus(Position other) {
+            return new Position(symbol, name != null ? name : other.name, quantity + other.quantity);
+        }
+    }
+
+    private static final class Price {
+        private final BigDecimal value;
+        private final long updatedAt;
+        private final long receivedAt = System.currentTimeMillis();
+
+        private Price(BigDecimal value, long updatedAt) {
+            this.value = value;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    private final class Depot {
+        private final Long customerId;
+        private final String customerNumber;
+        private final long loadedAt = System.currentTimeMillis();
+        private final Map<String, Position> positions = new LinkedHashMap<>();
+        private BigDecimal total = BigDecimal.ZERO;
+
+        private Depot(Long customerId, String customerNumber) {
+            this.customerId = customerId;
+            this.customerNumber = customerNumber;
+        }
+
+        private DepotDTO toDTO() {
+            DepotDTO dto = new DepotDTO();
+            dto.setCustomerId(customerId);
+            dto.setCustomerNumber(customerNumber);
+            for (Map.Entry<String, Position> entry : positions.entrySet()) {
+                Price price = prices.get(entry.getKey());
+                DepotPositionDTO position = new DepotPositionDTO(entry.getValue().symbol, entry.getValue().name,
+                    entry.getValue().quantity, price.value);
+                position.setPriceUpdatedAt(Instant.ofEpochMilli(price.updatedAt).toString());
+                dto.getPositions().add(position);
+            }
+            dto.setTotalValue(total);
+            return dto;
+        }
+    }
+}
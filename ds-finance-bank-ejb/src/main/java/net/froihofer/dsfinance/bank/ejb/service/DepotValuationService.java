@@ -0,0 +1,402 @@
+package net.froihofer.dsfinance.bank.ejb.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import net.froihofer.dsfinance.bank.common.dto.DepotValuationDTO;
+import net.froihofer.dsfinance.bank.ejb.entity.DepotValuationRun;
+import net.froihofer.dsfinance.bank.ejb.trading.QuoteCache;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+/**
+ * Values all customer depots at once, e.g. for the end of day.
+ *
+ * All positions are read in one scan ordered by customer, the distinct symbols are
+ * priced in batched trading service calls and the customers are valued in parallel
+ * on a fork/join pool of {@code depot.valuation.parallelism} threads. The result is
+ * stored as a dated snapshot: one row per customer plus a summary run, both
+ * replaced if the same day is valued again. Runs every day at 23:30; a run claims
+ * its day in the database, so only one node runs it.
+ * @PermitAll allows access from REST endpoints which have their own security
+ */
+@Singleton
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class DepotValuationService {
+    private static final Logger log = LoggerFactory.getLogger(DepotValuationService.class);
+
+    private static final int SCAN_FETCH_SIZE = 5_000;
+    private static final int PRICE_BATCH_SIZE = 500;
+    private static final int WRITE_BATCH_SIZE = 1_000;
+    private static final int VALUATION_THRESHOLD = 2_048;
+    private static final long DEFAULT_RUN_TIMEOUT_SECONDS = 3_600;
+
+    private static final String SCAN_SQL =
+        "SELECT p.customer_id, c.customer_number, p.stock_symbol, p.quantity "
+            + "FROM depot_position p JOIN customer c ON c.id = p.customer_id "
+            + "WHERE p.quantity > 0 ORDER BY p.customer_id";
+
+    // A running claim is only taken over once it is older than the run timeout
+    private static final String CLAIM_SQL =
+        "INSERT INTO depot_valuation_run (valuation_date, status, started_at) VALUES (:date, 'RUNNING', :now) "
+            + "ON CONFLICT (valuation_date) DO UPDATE SET status = 'RUNNING', started_at = EXCLUDED.started_at, "
+            + "customers = NULL, positions = NULL, symbols = NULL, unpriced_symbols = NULL, total_value = NULL, completed_at = NULL "
+            + "WHERE depot_valuation_run.status <> 'RUNNING' OR depot_valuation_run.started_at < :staleBefore "
+            + "RETURNING valuation_date";
+
+    private static final String CLEAR_SQL = "DELETE FROM depot_valuation WHERE valuation_date = :date";
+
+    private static final String INSERT_SQL =
+        "INSERT INTO depot_valuation (valuation_date, customer_id, customer_number, positions, unpriced_positions, total_value) VALUES ";
+
+    @PersistenceContext(unitName = "ds-finance-bank-ref-persunit")
+    private EntityManager em;
+
+    @Resource
+    private SessionContext sessionContext;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    @EJB
+    private TradingService tradingService;
+
+    @Inject
+    private Config config;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void init() {
+        int parallelism = getConfig("depot.valuation.parallelism", Integer.class)
+            .filter(value -> value > 0)
+            .orElse(Runtime.getRuntime().availableProcessors());
+        pool = new ForkJoinPool(parallelism, threadFactory, null, false);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Values all depots and stores the result as the valuation of the given day
+     * @throws IllegalStateException if a valuation of that day is already running
+     */
+    public DepotValuationDTO runValuation(LocalDate valuationDate) {
+        DepotValuationService self = sessionContext.getBusinessObject(DepotValuationService.class);
+        if (!self.claim(valuationDate)) {
+            throw new IllegalStateException("A depot valuation for " + valuationDate + " is already running");
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            Book book = self.scanPositions();
+            BigDecimal[] prices = fetchPrices(book.symbols);
+
+            BigDecimal[] totals = new BigDecimal[book.customers];
+            int[] unpriced = new int[book.customers];
+            pool.invoke(new ValueCustomers(book, prices, totals, unpriced, 0, book.customers));
+
+            for (int from = 0; from < book.customers; from += WRITE_BATCH_SIZE) {
+                self.writeValuations(valuationDate, book, totals, unpriced, from, Math.min(book.customers, from + WRITE_BATCH_SIZE));
+            }
+
+            BigDecimal total = Arrays.stream(totals).reduce(BigDecimal.ZERO, BigDecimal::add);
+            int unpricedSymbols = (int) Arrays.stream(prices).filter(price -> price == null).count();
+            DepotValuationDTO result = self.complete(valuationDate, book.customers, book.positions,
+                book.symbols.size(), unpricedSymbols, total);
+            log.info("Valued {} depots with {} positions in {} ms: {}", book.customers, book.positions,
+                System.currentTimeMillis() - start, total);
+            return result;
+        } catch (RuntimeException e) {
+            log.error("Depot valuation for {} failed: {}", valuationDate, e.getMessage());
+            self.fail(valuationDate);
+            throw e;
+        }
+    }
+
+    /**
+     * Values all depots at the end of the day unless that day is valued already
+     */
+    @Schedule(hour = "23", minute = "30", persistent = false)
+    public void runEndOfDay() {
+        LocalDate today = LocalDate.now();
+        DepotValuationRun run = em.find(DepotValuationRun.class, today);
+        if (run != null && run.getStatus() == DepotValuationRun.Status.COMPLETED) {
+            return;
+        }
+        try {
+            runValuation(today);
+        } catch (IllegalStateException e) {
+            log.info("Skipping end of day depot valuation: {}", e.getMessage());
+        } catch (Exception e) {
+            log.error("End of day depot valuation failed", e);
+        }
+    }
+
+    /**
+     * @param valuationDate day of the valuation; the latest completed valuation if null
+     * @return the valuation summary, or null if there is none
+     */
+    public DepotValuationDTO getValuation(LocalDate valuationDate) {
+        if (valuationDate != null) {
+            DepotValuationRun run = em.find(DepotValuationRun.class, valuationDate);
+            return run == null ? null : toDTO(run);
+        }
+        return em.createNamedQuery("DepotValuationRun.findLatest", DepotValuationRun.class)
+            .setParameter("completed", DepotValuationRun.Status.COMPLETED)
+            .setMaxResults(1)
+            .getResultStream()
+            .findFirst()
+            .map(this::toDTO)
+            .orElse(null);
+    }
+
+    /**
+     * Marks the day as running and drops its previous per-customer rows
+     * @return false if a run of that day is in progress
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public boolean claim(LocalDate valuationDate) {
+        long timeout = getConfig("depot.valuation.runTimeout", Long.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_RUN_TIMEOUT_SECONDS);
+        OffsetDateTime now = OffsetDateTime.now();
+        List<?> claimed = em.createNativeQuery(CLAIM_SQL)
+            .setParameter("date", valuationDate)
+            .setParameter("now", now)
+            .setParameter("staleBefore", now.minusSeconds(timeout))
+            .getResultList();
+        if (claimed.isEmpty()) {
+            return false;
+        }
+        em.createNativeQuery(CLEAR_SQL)
+            .setParameter("date", valuationDate)
+            .executeUpdate();
+        return true;
+    }
+
+    /**
+     * Reads all positions in one scan ordered by customer
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Book scanPositions() {
+        Book book = new Book();
+        try (Stream<?> rows = em.createNativeQuery(SCAN_SQL)
+                .setHint("org.hibernate.fetchSize", SCAN_FETCH_SIZE)
+                .getResultStream()) {
+            rows.forEach(row -> {
+                Object[] columns = (Object[]) row;
+                book.add(((Number) columns[0]).longValue(), (String) columns[1], (String) columns[2],
+                    ((Number) columns[3]).intValue());
+            });
+        }
+        return book;
+    }
+
+    /**
+     * Stores the valuations of customers {@code from} (inclusive) to {@code to} (exclusive)
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void writeValuations(LocalDate valuationDate, Book book, BigDecimal[] totals, int[] unpriced, int from, int to) {
+        StringBuilder sql = new StringBuilder(INSERT_SQL);
+        for (int i = from; i < to; i++) {
+            int param = (i - from) * 6;
+            sql.append(i > from ? ", " : "")
+                .append("(?").append(param + 1).append(", ?").append(param + 2).append(", ?").append(param + 3)
+                .append(", ?").append(param + 4).append(", ?").append(param + 5).append(", ?").append(param + 6).append(')');
+        }
+        Query insert = em.createNativeQuery(sql.toString());
+        for (int i = from; i < to; i++) {
+            int param = (i - from) * 6;
+            insert.setParameter(param + 1, valuationDate)
+                .setParameter(param + 2, book.customerIds[i])
+                .setParameter(param + 3, book.customerNumbers[i])
+                .setParameter(param + 4, book.end(i) - book.firstPosition[i])
+                .setParameter(param + 5, unpriced[i])
+                .setParameter(param + 6, totals[i]);
+        }
+        insert.executeUpdate();
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public DepotValuationDTO complete(LocalDate valuationDate, int customers, int positions, int symbols,
+                                      int unpricedSymbols, BigDecimal totalValue) {
+        DepotValuationRun run = em.find(DepotValuationRun.class, valuationDate);
+        run.setStatus(DepotValuationRun.Status.COMPLETED);
+        run.setCustomers(customers);
+        run.setPositions(positions);
+        run.setSymbols(symbols);
+        run.setUnpricedSymbols(unpricedSymbols);
+        run.setTotalValue(totalValue);
+        run.setCompletedAt(OffsetDateTime.now());
+        return toDTO(run);
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void fail(LocalDate valuationDate) {
+        DepotValuationRun run = em.find(DepotValuationRun.class, valuationDate);
+        if (run != null) {
+            run.setStatus(DepotValuationRun.Status.FAILED);
+            run.setCompletedAt(OffsetDateTime.now());
+        }
+    }
+
+    /**
+     * Prices by symbol id, fetched in batches past the quote caches; null where no
+     * quote was found
+     */
+    private BigDecimal[] fetchPrices(List<String> symbols) {
+        BigDecimal[] prices = new BigDecimal[symbols.size()];
+        for (int from = 0; from < symbols.size(); from += PRICE_BATCH_SIZE) {
+            int to = Math.min(symbols.size(), from + PRICE_BATCH_SIZE);
+            // keyed by QuoteCache.key, like the symbols of the book
+            Map<String, BigDecimal> batch = tradingService.fetchPricesUncached(symbols.subList(from, to));
+            for (int id = from; id < to; id++) {
+                prices[id] = batch.get(symbols.get(id));
+            }
+        }
+        return prices;
+    }
+
+    private DepotValuationDTO toDTO(DepotValuationRun run) {
+        DepotValuationDTO dto = new DepotValuationDTO();
+        dto.setValuationDate(run.getValuationDate().toString());
+        dto.setStatus(run.getStatus().name());
+        dto.setCustomers(run.getCustomers());
+        dto.setPositions(run.getPositions());
+        dto.setSymbols(run.getSymbols());
+        dto.setUnpricedSymbols(run.getUnpricedSymbols());
+        dto.setTotalValue(run.getTotalValue());
+        dto.setStartedAt(run.getStartedAt().toInstant().toString());
+        dto.setCompletedAt(run.getCompletedAt() == null ? null : run.getCompletedAt().toInstant().toString());
+        return dto;
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+
+    /**
+     * All positions in compact arrays: customer c holds positions
+     * {@code firstPosition[c]} (inclusive) to {@code end(c)} (exclusive), each a
+     * symbol id into {@code symbols} and a quantity.
+     */
+    static final class Book {
+        private final Map<String, Integer> symbolIds = new HashMap<>();
+        private final List<String> symbols = new ArrayList<>();
+        private long[] customerIds = new long[1_024];
+        private String[] customerNumbers = new String[1_024];
+        private int[] firstPosition = new int[1_024];
+        private int[] symbolOf = new int[4_096];
+        private int[] quantities = new int[4_096];
+        private int customers;
+        private int positions;
+
+        private void add(long customerId, String customerNumber, String symbol, int quantity) {
+            if (customers == 0 || customerIds[customers - 1] != customerId) {
+                if (customers == customerIds.length) {
+                    customerIds = Arrays.copyOf(customerIds, customers * 2);
+                    customerNumbers = Arrays.copyOf(customerNumbers, customers * 2);
+                    firstPosition = Arrays.copyOf(firstPosition, customers * 2);
+                }
+                customerIds[customers] = customerId;
+                customerNumbers[customers] = customerNumber;
+                firstPosition[customers] = positions;
+                customers++;
+            }
+            if (positions == symbolOf.length) {
+                symbolOf = Arrays.copyOf(symbolOf, positions * 2);
+                quantities = Arrays.copyOf(quantities, positions * 2);
+            }
+            symbolOf[positions] = symbolIds.computeIfAbsent(QuoteCache.key(symbol), key -> {
+                symbols.add(key);
+                return symbols.size() - 1;
+            });
+            quantities[positions] = quantity;
+            positions++;
+        }
+
+        private int end(int customer) {
+            return customer + 1 < customers ? firstPosition[customer + 1] : positions;
+        }
+    }
+
+    /**
+     * Values a range of customers, splitting it in halves down to
+     * {@value #VALUATION_THRESHOLD} customers
+     */
+    private static final class ValueCustomers extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Book book;
+        private final BigDecimal[] prices;
+        private final BigDecimal[] totals;
+        private final int[] unpriced;
+        private final int from;
+        private final int to;
+
+        private ValueCustomers(Book book, BigDecimal[] prices, BigDecimal[] totals, int[] unpriced, int from, int to) {
+            this.book = book;
+            this.prices = prices;
+            this.totals = totals;
+            this.unpriced = unpriced;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > VALUATION_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ValueCustomers(book, prices, totals, unpriced, from, middle),
+                    new ValueCustomers(book, prices, totals, unpriced, middle, to));
+                return;
+            }
+            for (int customer = from; customer < to; customer++) {
+                BigDecimal total = BigDecimal.ZERO;
+                for (int position = book.firstPosition[customer]; position < book.end(customer); position++) {
+                    BigDecimal price = prices[book.symbolOf[position]];
+                    if (price == null) {
+                        unpriced[customer]++;
+                    } else {
+                        total = total.add(price.multiply(BigDecimal.valueOf(book.quantities[position])));
+                    }
+                }
+                totals[customer] = total.setScale(2, RoundingMode.HALF_UP);
+            }
+        }
+    }
+}
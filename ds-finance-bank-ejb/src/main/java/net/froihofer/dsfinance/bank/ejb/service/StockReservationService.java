@@ -0,0 +1,195 @@
+package net.froihofer.dsfinance.bank.ejb.service;
+
+import jakarta.annotation.Resource;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import net.froihofer.dsfinance.bank.ejb.entity.Customer;
+import net.froihofer.dsfinance.bank.ejb.entity.StockReservation;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Service Bean for two-phase depot reservations of sell orders.
+ *
+ * {@link #reserve} takes the shares out of the depot and records the reservation in
+ * its own short transaction before the order is sent to the exchange, which then
+ * runs without a transaction. {@link #confirm} closes the reservation in the booking
+ * transaction; {@link #release} puts the shares back if the order failed.
+ * Reservations neither confirmed nor released within {@code depot.reservation.ttl}
+ * seconds are put back by a timer, unless {@link #markFilledUnbooked} kept them for
+ * reconciliation.
+ * @PermitAll allows access from REST endpoints which have their own security
+ */
+@Stateless
+@PermitAll
+public class StockReservationService {
+    private static final Logger log = LoggerFactory.getLogger(StockReservationService.class);
+
+    private static final long DEFAULT_TTL_SECONDS = 120;
+    private static final int EXPIRY_BATCH_SIZE = 100;
+
+    @PersistenceContext(unitName = "ds-finance-bank-ref-persunit")
+    private EntityManager em;
+
+    @Resource
+    private SessionContext sessionContext;
+
+    @EJB
+    private CustomerService customerService;
+
+    @EJB
+    private DepotService depotService;
+
+    @Inject
+    private Config config;
+
+    /**
+     * Takes the shares out of the customer's depot and records the reservation
+     * @return the reservation id
+     * @throws IllegalStateException if the customer does not hold enough shares
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Long reserve(Customer customer, String tradeRef, String stockSymbol, Integer quantity) {
+        if (!depotService.removeStocks(customer, stockSymbol, quantity)) {
+            throw new IllegalStateException("Customer does not have enough stocks to sell");
+        }
+        long ttl = getConfig("depot.reservation.ttl", Long.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_TTL_SECONDS);
+        StockReservation reservation = new StockReservation(tradeRef, customer.getCustomerNumber(), stockSymbol,
+            quantity, OffsetDateTime.now().plusSeconds(ttl));
+        em.persist(reservation);
+        log.debug("Reserved {} shares of {} for trade {} (reservation {})", quantity, stockSymbol, tradeRef, reservation.getId());
+        return reservation.getId();
+    }
+
+    /**
+     * Closes the reservation of an executed sell. Joins the caller's transaction, so
+     * it commits together with the booking. If the reservation expired meanwhile,
+     * the shares are taken out of the depot again; if the customer no longer holds
+     * them, the sell is booked anyway, as the exchange executed it.
+     */
+    public void confirm(Long reservationId) {
+        StockReservation reservation = lock(reservationId);
+        if (reservation.getStatus() == StockReservation.Status.CONFIRMED) {
+            throw new IllegalStateException("Reservation " + reservationId + " is already confirmed");
+        }
+
+        // A released or expired reservation has already been put back into the depot
+        boolean held = reservation.getStatus() == StockReservation.Status.RESERVED
+            || reservation.getStatus() == StockReservation.Status.FILLED_UNBOOKED;
+        if (!held && !depotService.removeStocks(customerOf(reservation), reservation.getStockSymbol(), reservation.getQuantity())) {
+            log.error("Sell of trade {} was executed, but the customer no longer holds {} shares of {}",
+                reservation.getTradeRef(), reservation.getQuantity(), reservation.getStockSymbol());
+        }
+
+        reservation.setStatus(StockReservation.Status.CONFIRMED);
+        reservation.setUpdatedAt(OffsetDateTime.now());
+    }
+
+    /**
+     * Puts the reserved shares back into the depot, e.g. because the order failed
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void release(Long reservationId) {
+        returnStocks(lock(reservationId), StockReservation.Status.RELEASED);
+    }
+
+    /**
+     * Keeps the shares out of the depot for an order that was executed at the exchange
+     * but could not be booked, or whose outcome is unknown: the reservation is marked
+     * for reconciliation, so it never expires
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void markFilledUnbooked(Long reservationId) {
+        StockReservation reservation = lock(reservationId);
+        if (reservation.getStatus() != StockReservation.Status.RESERVED) {
+            log.error("Reservation {} of unbooked trade {} is already {}", reservationId, reservation.getTradeRef(),
+                reservation.getStatus());
+            return;
+        }
+        reservation.setStatus(StockReservation.Status.FILLED_UNBOOKED);
+        reservation.setUpdatedAt(OffsetDateTime.now());
+    }
+
+    /**
+     * Puts the reserved shares back if the reservation is still open and has expired
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void expire(Long reservationId) {
+        StockReservation reservation = lock(reservationId);
+        if (reservation.getExpiresAt().isBefore(OffsetDateTime.now())
+                && returnStocks(reservation, StockReservation.Status.EXPIRED)) {
+            log.warn("Reservation {} of {} shares of {} for trade {} expired", reservationId, reservation.getQuantity(),
+                reservation.getStockSymbol(), reservation.getTradeRef());
+        }
+    }
+
+    /**
+     * Puts back the shares of expired reservations, each in its own transaction
+     */
+    @Schedule(hour = "*", minute = "*", persistent = false)
+    public void expireReservations() {
+        List<Long> expired = em.createNamedQuery("StockReservation.findExpired", Long.class)
+            .setParameter("reserved", StockReservation.Status.RESERVED)
+            .setParameter("now", OffsetDateTime.now())
+            .setMaxResults(EXPIRY_BATCH_SIZE)
+            .getResultList();
+        StockReservationService self = sessionContext.getBusinessObject(StockReservationService.class);
+        for (Long reservationId : expired) {
+            try {
+                self.expire(reservationId);
+            } catch (Exception e) {
+                log.error("Failed to expire reservation {}: {}", reservationId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The symbol stands in for the name should the emptied position have been purged meanwhile
+     */
+    private boolean returnStocks(StockReservation reservation, StockReservation.Status status) {
+        if (reservation.getStatus() != StockReservation.Status.RESERVED) {
+            return false;
+        }
+        depotService.addStocks(customerOf(reservation), reservation.getStockSymbol(),
+            reservation.getStockSymbol().trim(), reservation.getQuantity());
+        reservation.setStatus(status);
+        reservation.setUpdatedAt(OffsetDateTime.now());
+        return true;
+    }
+
+    private Customer customerOf(StockReservation reservation) {
+        Customer customer = customerService.getCustomerEntityByNumber(reservation.getCustomerNumber());
+        if (customer == null) {
+            throw new IllegalStateException("Customer not found: " + reservation.getCustomerNumber());
+        }
+        return customer;
+    }
+
+    private StockReservation lock(Long reservationId) {
+        StockReservation reservation = em.find(StockReservation.class, reservationId, LockModeType.PESSIMISTIC_WRITE);
+        if (reservation == null) {
+            throw new IllegalStateException("Reservation not found: " + reservationId);
+        }
+        return reservation;
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+}
@@ -0,0 +1,35 @@
+package net.froihofer.dsfinance.bank.ejb.service;
+
+import jakarta.ejb.EJBException;
+
+/**
+ * Classifies failures of buy and sell orders. Exceptions wrapped in an
+ * {@link EJBException} on their way out of a bean are classified by their cause.
+ */
+public final class TradeFailures {
+
+    private TradeFailures() {
+    }
+
+    /**
+     * @return the failure with all enclosing {@link EJBException}s removed
+     */
+    public static Throwable unwrap(Throwable failure) {
+        Throwable cause = failure;
+        while (cause instanceof EJBException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Whether the order definitely did not trade: it failed validation, was rejected
+     * by the exchange or was never sent (IllegalArgumentException or
+     * IllegalStateException, which includes TradingUnavailableException). After any
+     * other failure, e.g. a timeout, the exchange may have executed the order.
+     */
+    public static boolean isRejected(Throwable failure) {
+        Throwable cause = unwrap(failure);
+        return cause instanceof IllegalArgumentException || cause instanceof IllegalStateException;
+    }
+}
@@ -0,0 +1,353 @@
+package net.froihofer.dsfinance.bank.ejb.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import net.froihofer.dsfinance.bank.ejb.entity.TradeIdempotency;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.OffsetDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Executes buy and sell requests at most once per idempotency key.
+ *
+ * The outcome of a request is stored in {@code trade_idempotency} for
+ * {@code trading.orders.idempotency.ttl} seconds; the most recently used
+ * {@code trading.orders.idempotency.maxEntries} keys are also kept in memory. A retry
+ * with the same key gets the stored outcome without the trade being executed again,
+ * and a duplicate arriving while the first request is still running waits for its
+ * outcome. Reusing a key for a different request is rejected.
+ *
+ * Outcomes with status 503 are not kept: the request was rejected before it reached
+ * the exchange and may be retried with the same key. Any other failure may have
+ * happened after the exchange executed the order, so it is kept like a success.
+ * @PermitAll allows access from REST endpoints which have their own security
+ */
+@Singleton
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class TradeIdempotencyService {
+    private static final Logger log = LoggerFactory.getLogger(TradeIdempotencyService.class);
+
+    private static final long DEFAULT_TTL_SECONDS = 86_400;
+    private static final int DEFAULT_MAX_ENTRIES = 10_000;
+    private static final long DEFAULT_MAX_WAIT_MILLIS = 30_000;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    private static final int MAX_KEY_LENGTH = 100;
+    private static final int MAX_MESSAGE_LENGTH = 500;
+
+    @PersistenceContext(unitName = "ds-finance-bank-ref-persunit")
+    private EntityManager em;
+
+    @Resource
+    private SessionContext sessionContext;
+
+    @Inject
+    private Config config;
+
+    // guarded by itself; access order, so the least recently used key is evicted first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+
+    private long ttlSeconds;
+    private int maxEntries;
+    private long maxWaitMillis;
+
+    @PostConstruct
+    public void init() {
+        ttlSeconds = getConfig("trading.orders.idempotency.ttl", Long.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_TTL_SECONDS);
+        maxEntries = getConfig("trading.orders.idempotency.maxEntries", Integer.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_MAX_ENTRIES);
+        maxWaitMillis = getConfig("trading.orders.idempotency.maxWait", Long.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * Runs the request unless a request with the same key was already executed.
+     * Without a key the request simply runs.
+     * @param fingerprint identifies the request; a key is only valid for one fingerprint
+     * @return the outcome of the first execution; {@link TradeOutcome#isReplayed()} if it was stored
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public TradeOutcome execute(String customerNumber, String idempotencyKey, String fingerprint,
+                                Supplier<TradeOutcome> request) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return request.get();
+        }
+        String key = idempotencyKey.trim();
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency key must not be longer than " + MAX_KEY_LENGTH + " characters");
+        }
+        String requestKey = customerNumber + ":" + key;
+
+        Entry entry;
+        boolean owner = false;
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            entry = entries.get(requestKey);
+            if (entry != null && entry.expiresAt <= now) {
+                entries.remove(requestKey);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(fingerprint, now + TimeUnit.SECONDS.toMillis(ttlSeconds));
+                entries.put(requestKey, entry);
+                owner = true;
+                evictEldest();
+            }
+        }
+
+        if (!entry.fingerprint.equals(fingerprint)) {
+            conflicts.incrementAndGet();
+            throw new IllegalArgumentException("Idempotency key '" + key + "' was already used for a different request");
+        }
+        if (!owner) {
+            replays.incrementAndGet();
+            return await(key, entry).asReplay();
+        }
+        return executeOnce(requestKey, customerNumber, entry, request);
+    }
+
+    /**
+     * Inserts the key as IN_PROGRESS unless it exists and has not expired.
+     * @return true if the caller now owns the key
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public boolean reserve(String requestKey, String customerNumber, String fingerprint, OffsetDateTime expiresAt) {
+        OffsetDateTime now = OffsetDateTime.now();
+        em.createNamedQuery("TradeIdempotency.deleteExpiredKey")
+            .setParameter("requestKey", requestKey)
+            .setParameter("now", now)
+            .executeUpdate();
+        int inserted = em.createNativeQuery(
+                "INSERT INTO trade_idempotency (request_key, customer_number, fingerprint, status, created_at, expires_at) "
+                    + "VALUES (?1, ?2, ?3, ?4, ?5, ?6) ON CONFLICT (request_key) DO NOTHING")
+            .setParameter(1, requestKey)
+            .setParameter(2, customerNumber)
+            .setParameter(3, fingerprint)
+            .setParameter(4, TradeIdempotency.Status.IN_PROGRESS.name())
+            .setParameter(5, now)
+            .setParameter(6, expiresAt)
+            .executeUpdate();
+        return inserted == 1;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void complete(String requestKey, TradeOutcome outcome) {
+        TradeIdempotency record = em.find(TradeIdempotency.class, requestKey);
+        if (record == null) {
+            throw new IllegalStateException("Idempotency key not reserved: " + requestKey);
+        }
+        String message = outcome.getMessage();
+        record.setStatus(TradeIdempotency.Status.COMPLETED);
+        record.setHttpStatus(outcome.getStatus());
+        record.setMessage(message == null || message.length() <= MAX_MESSAGE_LENGTH
+            ? message : message.substring(0, MAX_MESSAGE_LENGTH));
+        record.setTotalAmount(outcome.getTotalAmount());
+        record.setOrderId(outcome.getOrderId());
+    }
+
+    /**
+     * Removes the key if its request has not completed, so it can be retried.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void release(String requestKey) {
+        em.createNamedQuery("TradeIdempotency.release")
+            .setParameter("requestKey", requestKey)
+            .setParameter("inProgress", TradeIdempotency.Status.IN_PROGRESS)
+            .executeUpdate();
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Optional<TradeIdempotency> find(String requestKey) {
+        return Optional.ofNullable(em.find(TradeIdempotency.class, requestKey));
+    }
+
+    /**
+     * Deletes expired outcomes from the database.
+     */
+    @Schedule(hour = "*", minute = "17", persistent = false)
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void purgeExpired() {
+        int purged = em.createNamedQuery("TradeIdempotency.purgeExpired")
+            .setParameter("now", OffsetDateTime.now())
+            .executeUpdate();
+        if (purged > 0) {
+            log.info("Purged {} expired idempotency key(s)", purged);
+        }
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            entries.values().removeIf(entry -> entry.expiresAt <= now);
+        }
+    }
+
+    /**
+     * Key and replay counters.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ttlSeconds", ttlSeconds);
+        synchronized (entries) {
+            stats.put("cachedKeys", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("executions", executions.get());
+        stats.put("replays", replays.get());
+        stats.put("waits", waits.get());
+        stats.put("conflicts", conflicts.get());
+        return stats;
+    }
+
+    private TradeOutcome executeOnce(String requestKey, String customerNumber, Entry entry, Supplier<TradeOutcome> request) {
+        TradeIdempotencyService self = sessionContext.getBusinessObject(TradeIdempotencyService.class);
+        OffsetDateTime expiresAt = OffsetDateTime.now().plusSeconds(ttlSeconds);
+        TradeOutcome outcome;
+        try {
+            if (self.reserve(requestKey, customerNumber, entry.fingerprint, expiresAt)) {
+                outcome = run(self, requestKey, request);
+            } else {
+                // Executed by another node or before a restart
+                replays.incrementAndGet();
+                outcome = awaitStored(self, requestKey, entry.fingerprint).asReplay();
+            }
+        } catch (RuntimeException | Error e) {
+            forget(requestKey, entry);
+            entry.outcome.completeExceptionally(e);
+            throw e;
+        }
+
+        if (!outcome.isRetained()) {
+            forget(requestKey, entry);
+        }
+        entry.outcome.complete(outcome);
+        return outcome;
+    }
+
+    private TradeOutcome run(TradeIdempotencyService self, String requestKey, Supplier<TradeOutcome> request) {
+        executions.incrementAndGet();
+        TradeOutcome outcome;
+        try {
+            outcome = request.get();
+        } catch (RuntimeException | Error e) {
+            self.release(requestKey);
+            throw e;
+        }
+
+        if (!outcome.isRetained()) {
+            self.release(requestKey);
+            return outcome;
+        }
+        try {
+            self.complete(requestKey, outcome);
+        } catch (RuntimeException e) {
+            // The trade is done; the key stays IN_PROGRESS in the database and retries are answered from memory
+            log.error("Failed to store the outcome of idempotency key {}: {}", requestKey, e.getMessage());
+        }
+        return outcome;
+    }
+
+    private TradeOutcome await(String key, Entry entry) {
+        waits.incrementAndGet();
+        try {
+            return entry.outcome.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("A request with idempotency key '" + key + "' is still in progress", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the request with idempotency key '" + key + "'", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Request with idempotency key '" + key + "' failed", cause);
+        }
+    }
+
+    private TradeOutcome awaitStored(TradeIdempotencyService self, String requestKey, String fingerprint) {
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        while (true) {
+            TradeIdempotency record = self.find(requestKey)
+                .orElseThrow(() -> new IllegalStateException("The request with idempotency key " + requestKey + " did not complete, retry it"));
+            if (!record.getFingerprint().equals(fingerprint)) {
+                conflicts.incrementAndGet();
+                throw new IllegalArgumentException("Idempotency key " + requestKey + " was already used for a different request");
+            }
+            if (record.getStatus() == TradeIdempotency.Status.COMPLETED) {
+                return new TradeOutcome(record.getHttpStatus(), record.getMessage(), record.getTotalAmount(), record.getOrderId());
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IllegalStateException("A request with idempotency key " + requestKey + " is still in progress");
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the request with idempotency key " + requestKey, e);
+            }
+        }
+    }
+
+    private void forget(String requestKey, Entry entry) {
+        synchronized (entries) {
+            entries.remove(requestKey, entry);
+        }
+    }
+
+    // caller holds the entries lock
+    private void evictEldest() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+
+    private static final class Entry {
+        private final String fingerprint;
+        private final long expiresAt;
+        private final CompletableFuture<TradeOutcome> outcome = new CompletableFuture<>();
+
+        private Entry(String fingerprint, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
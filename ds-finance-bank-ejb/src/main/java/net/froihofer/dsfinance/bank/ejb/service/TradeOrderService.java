@@ -0,0 +1,181 @@
+package net.froihofer.dsfinance.bank.ejb.service;
+
+import jakarta.annotation.Resource;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+import jakarta.jms.JMSContext;
+import jakarta.jms.Queue;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import net.froihofer.dsfinance.bank.common.dto.TradeOrderDTO;
+import net.froihofer.dsfinance.bank.ejb.entity.TradeOrder;
+import net.froihofer.dsfinance.bank.ejb.messaging.TradeOrderMessageBean;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+/**
+ * Service Bean for asynchronous order intake.
+ * Orders are persisted and their id is put on the trade order queue in the same
+ * transaction, so a message is only sent for committed orders. The
+ * {@link TradeOrderMessageBean} executes them.
+ * @PermitAll allows access from REST endpoints which have their own security
+ */
+@Stateless
+@PermitAll
+public class TradeOrderService {
+    private static final Logger log = LoggerFactory.getLogger(TradeOrderService.class);
+
+    private static final int MAX_FAILURE_REASON_LENGTH = 500;
+    private static final long DEFAULT_EXECUTING_TTL_SECONDS = 900;
+
+    @PersistenceContext(unitName = "ds-finance-bank-ref-persunit")
+    private EntityManager em;
+
+    @Inject
+    private JMSContext jmsContext;
+
+    @Resource(lookup = TradeOrderMessageBean.QUEUE_JNDI_NAME)
+    private Queue tradeOrderQueue;
+
+    @EJB
+    private CustomerService customerService;
+
+    @Inject
+    private Config config;
+
+    /**
+     * Validates and persists an order and enqueues it for execution.
+     */
+    public TradeOrderDTO submitOrder(String customerNumber, String stockSymbol, Integer quantity, TradeOrder.Side side) {
+        if (customerNumber == null || customerNumber.isBlank()) {
+            throw new IllegalArgumentException("Customer number must not be empty");
+        }
+        if (stockSymbol == null || stockSymbol.isBlank()) {
+            throw new IllegalArgumentException("Stock symbol must not be empty");
+        }
+        if (quantity == null || quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be greater than zero");
+        }
+        if (customerService.getCustomerEntityByNumber(customerNumber) == null) {
+            throw new IllegalArgumentException("Customer not found: " + customerNumber);
+        }
+
+        TradeOrder order = new TradeOrder(customerNumber.trim(), stockSymbol.trim(), quantity, side);
+        em.persist(order);
+        em.flush();
+
+        jmsContext.createProducer().send(tradeOrderQueue, order.getId());
+        log.info("Accepted {} order {} for {} shares of {} (customer {})",
+            side, order.getId(), quantity, order.getStockSymbol(), order.getCustomerNumber());
+        return toDTO(order);
+    }
+
+    /**
+     * Get an order by id
+     */
+    public TradeOrderDTO getOrder(Long orderId) {
+        TradeOrder order = orderId == null ? null : em.find(TradeOrder.class, orderId);
+        if (order == null) {
+            throw new IllegalArgumentException("Order not found: " + orderId);
+        }
+        return toDTO(order);
+    }
+
+    /**
+     * Moves a pending order to EXECUTING. Only one consumer can claim an order, so a
+     * redelivered message never executes it twice.
+     * @return the claimed order, or empty if it was not pending
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Optional<TradeOrderDTO> claimOrder(Long orderId) {
+        int updated = em.createNamedQuery("TradeOrder.claim")
+            .setParameter("executing", TradeOrder.Status.EXECUTING)
+            .setParameter("pending", TradeOrder.Status.PENDING)
+            .setParameter("now", OffsetDateTime.now())
+            .setParameter("id", orderId)
+            .executeUpdate();
+        if (updated == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(getOrder(orderId));
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void completeOrder(Long orderId, BigDecimal totalAmount) {
+        TradeOrder order = em.find(TradeOrder.class, orderId);
+        order.setStatus(TradeOrder.Status.COMPLETED);
+        order.setTotalAmount(totalAmount);
+        order.setUpdatedAt(OffsetDateTime.now());
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void failOrder(Long orderId, String reason) {
+        TradeOrder order = em.find(TradeOrder.class, orderId);
+        order.setStatus(TradeOrder.Status.FAILED);
+        order.setFailureReason(reason == null || reason.length() <= MAX_FAILURE_REASON_LENGTH
+            ? reason : reason.substring(0, MAX_FAILURE_REASON_LENGTH));
+        order.setUpdatedAt(OffsetDateTime.now());
+    }
+
+    /**
+     * Flags an order whose trade may or may not have been executed, e.g. after a
+     * timeout at the exchange: whether it was booked has to be checked by hand, and
+     * reporting it as failed would invite a duplicate order
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void flagForReconciliation(Long orderId, String reason) {
+        TradeOrder order = em.find(TradeOrder.class, orderId);
+        order.setStatus(TradeOrder.Status.NEEDS_RECONCILIATION);
+        order.setFailureReason(reason == null || reason.length() <= MAX_FAILURE_REASON_LENGTH
+            ? reason : reason.substring(0, MAX_FAILURE_REASON_LENGTH));
+        order.setUpdatedAt(OffsetDateTime.now());
+    }
+
+    /**
+     * Flags orders EXECUTING for longer than {@code trading.orders.executingTtl}
+     * seconds: their node died or could not record the outcome, so whether the
+     * trade was booked has to be checked by hand
+     */
+    @Schedule(hour = "*", minute = "*/5", persistent = false)
+    public void flagStaleOrders() {
+        long ttl = (config == null ? Optional.<Long>empty() : config.getOptionalValue("trading.orders.executingTtl", Long.class))
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_EXECUTING_TTL_SECONDS);
+        OffsetDateTime now = OffsetDateTime.now();
+        int flagged = em.createNamedQuery("TradeOrder.flagStale")
+            .setParameter("reconcile", TradeOrder.Status.NEEDS_RECONCILIATION)
+            .setParameter("reason", "Execution outcome not recorded within " + ttl + " seconds")
+            .setParameter("now", now)
+            .setParameter("executing", TradeOrder.Status.EXECUTING)
+            .setParameter("cutoff", now.minusSeconds(ttl))
+            .executeUpdate();
+        if (flagged > 0) {
+            log.error("{} order(s) stuck in EXECUTING flagged for reconciliation", flagged);
+        }
+    }
+
+    private TradeOrderDTO toDTO(TradeOrder order) {
+        TradeOrderDTO dto = new TradeOrderDTO();
+        dto.setOrderId(order.getId());
+        dto.setCustomerNumber(order.getCustomerNumber());
+        dto.setStockSymbol(order.getStockSymbol());
+        dto.setQuantity(order.getQuantity());
+        dto.setSide(order.getSide().name());
+        dto.setStatus(order.getStatus().name());
+        dto.setTotalAmount(order.getTotalAmount());
+        dto.setFailureReason(order.getFailureReason());
+        dto.setCreatedAt(order.getCreatedAt() != null ? order.getCreatedAt().toString() : null);
+        dto.setUpdatedAt(order.getUpdatedAt() != null ? order.getUpdatedAt().toString() : null);
+        return dto;
+    }
+}
@@ -0,0 +1,102 @@
+package net.froihofer.dsfinance.bank.ejb.service;
+
+import jakarta.ejb.EJBException;
+import net.froihofer.dsfinance.bank.ejb.trading.TradingUnavailableException;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Result of a buy or sell request as answered to the client: the HTTP status, the
+ * message, and the total amount of a synchronous trade or the id of a queued order.
+ * Kept by the {@link TradeIdempotencyService} so retries get the same answer.
+ */
+public class TradeOutcome implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int UNAVAILABLE_STATUS = 503;
+
+    private final int status;
+    private final String message;
+    private final BigDecimal totalAmount;
+    private final Long orderId;
+    private final boolean replayed;
+
+    public TradeOutcome(int status, String message, BigDecimal totalAmount, Long orderId) {
+        this(status, message, totalAmount, orderId, false);
+    }
+
+    private TradeOutcome(int status, String message, BigDecimal totalAmount, Long orderId, boolean replayed) {
+        this.status = status;
+        this.message = message;
+        this.totalAmount = totalAmount;
+        this.orderId = orderId;
+        this.replayed = replayed;
+    }
+
+    public static TradeOutcome executed(String message, BigDecimal totalAmount) {
+        return new TradeOutcome(200, message, totalAmount, null);
+    }
+
+    public static TradeOutcome accepted(Long orderId) {
+        return new TradeOutcome(202, "Order " + orderId + " accepted", null, orderId);
+    }
+
+    public static TradeOutcome failed(int status, String message) {
+        return new TradeOutcome(status, message, null, null);
+    }
+
+    /**
+     * Outcome of a request that threw. Exceptions wrapped in an {@link EJBException}
+     * on their way out of a bean are classified by their cause.
+     */
+    public static TradeOutcome failed(Throwable failure) {
+        Throwable cause = TradeFailures.unwrap(failure);
+        if (cause instanceof TradingUnavailableException) {
+            return failed(UNAVAILABLE_STATUS, cause.getMessage());
+        }
+        if (cause instanceof IllegalArgumentException || cause instanceof IllegalStateException) {
+            return failed(400, cause.getMessage());
+        }
+        return failed(500, cause.getMessage());
+    }
+
+    /**
+     * The same outcome, marked as answered from the idempotency store.
+     */
+    public TradeOutcome asReplay() {
+        return replayed ? this : new TradeOutcome(status, message, totalAmount, orderId, true);
+    }
+
+    /**
+     * Whether retries with the same idempotency key get this outcome. A 503 only
+     * says the trading service could not be reached, so it is not kept.
+     */
+    public boolean isRetained() {
+        return status != UNAVAILABLE_STATUS;
+    }
+
+    public boolean isSuccessful() {
+        return status >= 200 && status < 300;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public boolean isReplayed() {
+        return replayed;
+    }
+}
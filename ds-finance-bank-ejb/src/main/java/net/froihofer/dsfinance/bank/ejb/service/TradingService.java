@@ -1,80 +1,191 @@
 package net.froihofer.dsfinance.bank.ejb.service;
 
+import jakarta.annotation.Resource;
 import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.AsyncResult;
+import jakarta.ejb.Asynchronous;
+import jakarta.ejb.EJB;
+import jakarta.ejb.SessionContext;
 import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
 import jakarta.inject.Inject;
-import jakarta.xml.ws.BindingProvider;
+import jakarta.xml.ws.Dispatch;
 import jakarta.xml.ws.WebServiceException;
-import jakarta.xml.ws.WebServiceRef;
+import jakarta.xml.ws.soap.SOAPFaultException;
 import net.froihofer.dsfinance.bank.common.dto.StockDTO;
+import net.froihofer.dsfinance.bank.common.dto.StockHistoryDTO;
+import net.froihofer.dsfinance.bank.ejb.trading.FanOutExecutor;
+import net.froihofer.dsfinance.bank.ejb.trading.FanOutResult;
+import net.froihofer.dsfinance.bank.ejb.trading.HedgedInvoker;
+import net.froihofer.dsfinance.bank.ejb.trading.LatencyTracker;
+import net.froihofer.dsfinance.bank.ejb.trading.OrderAggregator;
+import net.froihofer.dsfinance.bank.ejb.trading.QuoteCache;
+import net.froihofer.dsfinance.bank.ejb.trading.QuoteHistoryStore;
+import net.froihofer.dsfinance.bank.ejb.trading.RequestCoalescer;
+import net.froihofer.dsfinance.bank.ejb.trading.StockSearchIndex;
+import net.froihofer.dsfinance.bank.ejb.trading.StreamingQuoteParser;
+import net.froihofer.dsfinance.bank.ejb.trading.SymbolPopularity;
+import net.froihofer.dsfinance.bank.ejb.trading.TopKQuoteCollector;
+import net.froihofer.dsfinance.bank.ejb.trading.TradingCircuitBreaker;
+import net.froihofer.dsfinance.bank.ejb.trading.TradingPortPool;
+import net.froihofer.dsfinance.bank.ejb.trading.TradingUnavailableException;
 import net.froihofer.dsfinance.ws.trading.api.PublicStockQuote;
+import net.froihofer.dsfinance.ws.trading.api.TradingWSException;
 import net.froihofer.dsfinance.ws.trading.api.TradingWebService;
-import net.froihofer.dsfinance.ws.trading.api.TradingWebServiceService;
 import net.froihofer.dsfinance.ws.trading.api.TradingWSException_Exception;
 import jakarta.xml.ws.http.HTTPException;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
 import org.eclipse.microprofile.config.Config;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.StringReader;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * Service Bean that integrates the external Trading SOAP Web Service.
  * All methods delegate to {@code https://edu.dedisys.org/ds-finance/ws/TradingService}
- * using the generated JAX-WS client stubs. Optional authentication and timeouts
- * are configurable via MicroProfile Config (see microprofile-config.properties).
+ * using the generated JAX-WS client stubs. Ports are checked out of the
+ * {@link TradingPortPool}, which applies authentication and timeouts from
+ * MicroProfile Config (see microprofile-config.properties).
  *
  * @PermitAll allows access from REST endpoints which apply their own security
  * constraints.
+ * The bean does not use the database, so it never starts a transaction: exchange
+ * calls do not hold a connection or row locks unless the caller already does.
  */
 @Stateless
 @PermitAll
+@TransactionAttribute(TransactionAttributeType.SUPPORTS)
 public class TradingService {
     private static final Logger log = LoggerFactory.getLogger(TradingService.class);
 
     private static final String DEFAULT_CURRENCY = "USD";
-    private static final String CONNECT_TIMEOUT_PROPERTY = "com.sun.xml.ws.connect.timeout";
-    private static final String REQUEST_TIMEOUT_PROPERTY = "com.sun.xml.ws.request.timeout";
     private static final List<String> FALLBACK_SYMBOLS = List.of("AAPL", "MSFT", "GOOGL", "AMZN");
+    private static final int DEFAULT_QUOTE_BATCH_SIZE = 100;
+    private static final long DEFAULT_COALESCING_DEADLINE_MILLIS = 10_000;
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+    private static final String QUOTE_KEY_PREFIX = "quote:";
+    private static final String SEARCH_KEY_PREFIX = "search:";
+    private static final String HISTORY_KEY_PREFIX = "history:";
+    private static final String OP_GET_QUOTES = "getStockQuotes";
+    private static final String OP_FIND_BY_NAME = "findStockQuotesByCompanyName";
+    private static final String OP_HISTORY = "getStockQuoteHistory";
+    private static final String OP_BUY = "buy";
+    private static final String OP_SELL = "sell";
+    private static final String TRADING_NAMESPACE = "http://api.trading.ws.dsfinance.froihofer.net/";
+    private static final int DEFAULT_HISTORY_POINTS = 200;
+    private static final int MAX_HISTORY_POINTS = 5_000;
 
-    @WebServiceRef(TradingWebServiceService.class)
-    private TradingWebServiceService tradingWebServiceService;
+    @EJB
+    private TradingPortPool portPool;
+
+    @EJB
+    private QuoteCache quoteCache;
+
+    @EJB
+    private RequestCoalescer coalescer;
+
+    @EJB
+    private FanOutExecutor fanOutExecutor;
+
+    @EJB
+    private TradingCircuitBreaker circuitBreaker;
+
+    @EJB
+    private StockSearchIndex searchIndex;
+
+    @EJB
+    private QuoteHistoryStore historyStore;
+
+    @EJB
+    private SymbolPopularity popularity;
+
+    @EJB
+    private LatencyTracker latencyTracker;
+
+    @EJB
+    private HedgedInvoker hedgedInvoker;
+
+    @EJB
+    private OrderAggregator orderAggregator;
+
+    @EJB
+    private DepotValuationCache valuationCache;
+
+    @Resource
+    private SessionContext sessionContext;
 
     @Inject
     private Config config;
 
     /**
-     * Search for stocks via SOAP TradingService.
+     * Search for stocks. Answered from the local {@link StockSearchIndex} when it
+     * knows matching stocks, otherwise via SOAP TradingService.
      */
     public List<StockDTO> searchStocks(String searchTerm) {
         String needle = searchTerm == null ? "" : searchTerm.trim();
         log.info("Searching stocks with term: '{}'", needle);
 
-        try {
-            TradingWebService port = getPort();
-            List<PublicStockQuote> quotes;
-
-            if (needle.isEmpty()) {
-                quotes = port.getStockQuotes(getDefaultSymbols());
-            } else {
-                quotes = port.findStockQuotesByCompanyName(needle);
+        if (!needle.isEmpty()) {
+            List<StockDTO> local = searchIndex.search(needle, getSearchLimit());
+            if (!local.isEmpty()) {
+                recordSearchResults(local);
+                log.debug("Answered search '{}' from local index with {} result(s)", needle, local.size());
+                return local;
             }
+        }
 
-            if (quotes == null || quotes.isEmpty()) {
-                return Collections.emptyList();
+        try {
+            // Concurrent searches for the same term share one remote call
+            List<StockDTO> results = coalescer.execute(SEARCH_KEY_PREFIX + needle, getCoalescingDeadline(), () -> {
+                if (needle.isEmpty()) {
+                    List<String> defaultSymbols = getDefaultSymbols();
+                    List<PublicStockQuote> quotes = hedgedCall(OP_GET_QUOTES, port -> port.getStockQuotes(defaultSymbols));
+                    if (quotes == null || quotes.isEmpty()) {
+                        return Collections.<StockDTO>emptyList();
+                    }
+                    return quotes.stream()
+                        .map(this::cacheQuote)
+                        .collect(Collectors.toList());
+                }
+
+                // Broad terms match thousands of stocks; keep only the best while parsing
+                TopKQuoteCollector collector = new TopKQuoteCollector(needle, getSearchLimit());
+                streamQuotesByCompanyName(needle, collector);
+                List<PublicStockQuote> best = collector.getResults();
+                log.debug("Search '{}' returned {} quote(s), kept {}", needle, collector.getOffered(), best.size());
+                // Only the quotes returned are cached, the rest would just evict hot entries
+                return best.stream()
+                    .map(this::cacheQuote)
+                    .collect(Collectors.toList());
+            });
+            if (!results.isEmpty()) {
+                recordSearchResults(results);
             }
-
-            return quotes.stream()
-                .map(this::toDto)
-                .collect(Collectors.toList());
+            return results;
         } catch (TradingWSException_Exception e) {
             log.warn("Trading service rejected search '{}': {}", needle, faultMessage(e));
             return Collections.emptyList();
+        } catch (TradingUnavailableException e) {
+            log.warn("Trading service unavailable for search '{}': {}", needle, e.getMessage());
+            return fallbackQuotes(needle);
         } catch (WebServiceException e) {
             if (isUnauthorized(e)) {
                 log.error("Trading service authentication failed for search '{}'. Check trading.ws.username/password configuration.", needle);
@@ -88,6 +199,24 @@ public class TradingService {
         }
     }
 
+    /**
+     * Streams all stocks whose company name contains the search term into the
+     * consumer, one quote at a time as the response is parsed. Nothing is
+     * buffered, so the consumer decides how much to keep (e.g. a
+     * {@link TopKQuoteCollector}). The quotes are not cached.
+     * @return the number of quotes streamed
+     */
+    public int streamStocks(String searchTerm, Consumer<StockDTO> consumer) {
+        String needle = searchTerm == null ? "" : searchTerm.trim();
+        try {
+            return streamQuotesByCompanyName(needle, quote -> consumer.accept(toDto(quote)));
+        } catch (TradingWSException_Exception e) {
+            throw new IllegalStateException("Trading service rejected search '" + needle + "': " + faultMessage(e), e);
+        } catch (WebServiceException e) {
+            throw translateWebServiceException("searching for '" + needle + "'", e);
+        }
+    }
+
     /**
      * Returns the latest price for the given stock symbol.
      */
@@ -95,6 +224,170 @@ public class TradingService {
         return getStockDetails(stockSymbol).getCurrentPrice();
     }
 
+    /**
+     * Fetches the current prices of many symbols for bulk jobs such as the depot
+     * valuation, keyed by {@link QuoteCache#key}. Goes straight to the trading
+     * service in batches of {@code trading.ws.batchSize} symbols and bypasses the
+     * quote cache, search index and popularity tracking, so a bulk run neither evicts
+     * nor skews what interactive requests use. A rejected batch is retried symbol by
+     * symbol; symbols without a quote are missing from the result.
+     */
+    public Map<String, BigDecimal> fetchPricesUncached(Collection<String> stockSymbols) {
+        List<String> symbols = normalizeSymbols(stockSymbols);
+        Map<String, BigDecimal> prices = new HashMap<>();
+        int batchSize = getQuoteBatchSize();
+        for (int from = 0; from < symbols.size(); from += batchSize) {
+            List<String> batch = symbols.subList(from, Math.min(from + batchSize, symbols.size()));
+            try {
+                collectPrices(hedgedCall(OP_GET_QUOTES, port -> port.getStockQuotes(batch)), prices);
+            } catch (TradingWSException_Exception e) {
+                log.warn("Batch price request for {} symbols rejected ({}), retrying per symbol", batch.size(), faultMessage(e));
+                for (String symbol : batch) {
+                    try {
+                        collectPrices(call(OP_GET_QUOTES, port -> port.getStockQuotes(Collections.singletonList(symbol))), prices);
+                    } catch (TradingWSException_Exception rejected) {
+                        log.warn("No price for {}: {}", symbol, faultMessage(rejected));
+                    }
+                }
+            } catch (WebServiceException e) {
+                throw translateWebServiceException("loading stock prices", e);
+            }
+        }
+        return prices;
+    }
+
+    private void collectPrices(List<PublicStockQuote> quotes, Map<String, BigDecimal> prices) {
+        if (quotes == null) {
+            return;
+        }
+        for (PublicStockQuote quote : quotes) {
+            if (quote != null && quote.getSymbol() != null && quote.getLastTradePrice() != null) {
+                prices.put(QuoteCache.key(quote.getSymbol()), quote.getLastTradePrice());
+            }
+        }
+    }
+
+    /**
+     * Returns the latest prices for the given symbols, keyed by trimmed symbol.
+     * All symbols are resolved with as few {@code getStockQuotes} round trips as
+     * possible (one per {@code trading.ws.batchSize} symbols). Symbols for which the
+     * trading service returns no quote are missing from the result.
+     */
+    public Map<String, BigDecimal> getStockPrices(Collection<String> stockSymbols) {
+        Map<String, BigDecimal> prices = new LinkedHashMap<>();
+        getStockQuotes(stockSymbols).forEach((symbol, quote) -> prices.put(symbol, quote.getCurrentPrice()));
+        return prices;
+    }
+
+    /**
+     * Returns quotes for all given symbols, keyed by trimmed symbol in request order.
+     * Quotes are served from the {@link QuoteCache} where possible; stale entries are
+     * returned immediately and refreshed in the background, and all misses are
+     * fetched together in batched {@code getStockQuotes} calls.
+     */
+    public Map<String, StockDTO> getStockQuotes(Collection<String> stockSymbols) {
+        List<String> symbols = normalizeSymbols(stockSymbols);
+        if (symbols.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<String> keys = symbols.stream().map(QuoteCache::key).distinct().collect(Collectors.toList());
+        popularity.record(keys, 1.0);
+
+        Map<String, StockDTO> cached = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        List<String> stale = new ArrayList<>();
+
+        for (String symbol : keys) {
+            QuoteCache.CachedQuote entry = quoteCache.lookup(symbol);
+            if (entry == null) {
+                missing.add(symbol);
+                continue;
+            }
+            cached.put(symbol, entry.getQuote());
+            if (!entry.isFresh()) {
+                stale.add(symbol);
+            }
+        }
+
+        refreshInBackground(stale);
+        Map<String, StockDTO> fetched;
+        try {
+            fetched = missing.isEmpty() ? Collections.emptyMap() : fetchMissingQuotes(missing);
+        } catch (TradingUnavailableException e) {
+            // Fail fast to whatever the cache still holds, however old
+            log.warn("Trading service unavailable, valuing {} symbol(s) from cached quotes: {}", missing.size(), e.getMessage());
+            fetched = peekCached(missing);
+        }
+
+        // Keep the caller's ordering and spelling of symbols
+        Map<String, StockDTO> ordered = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            String key = QuoteCache.key(symbol);
+            StockDTO quote = cached.containsKey(key) ? cached.get(key) : fetched.get(key);
+            if (quote != null) {
+                ordered.put(symbol, quote);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Resolves every symbol with its own {@code getStockQuotes} call, running the calls
+     * in parallel on the {@link FanOutExecutor}. Meant for symbol sets that one batch
+     * cannot serve, e.g. when the exchange rejects a batch because of a single unknown
+     * symbol. Fresh cached quotes are returned without a remote call; every other
+     * symbol gets either its quote or an error marker.
+     */
+    public Map<String, FanOutResult<StockDTO>> getStockQuotesParallel(Collection<String> stockSymbols) {
+        List<String> symbols = normalizeSymbols(stockSymbols);
+        Map<String, FanOutResult<StockDTO>> cached = new LinkedHashMap<>();
+        List<String> remote = new ArrayList<>();
+
+        for (String symbol : symbols) {
+            QuoteCache.CachedQuote entry = quoteCache.lookup(symbol);
+            if (entry != null && entry.isFresh()) {
+                cached.put(symbol, FanOutResult.success(entry.getQuote()));
+            } else {
+                remote.add(symbol);
+            }
+        }
+
+        Map<String, FanOutResult<StockDTO>> fetched = remote.isEmpty()
+            ? Collections.emptyMap()
+            : fanOutExecutor.invokeAll(remote, symbol -> {
+                String key = QuoteCache.key(symbol);
+                StockDTO quote = fetchQuotesCoalesced(Collections.singletonList(key)).get(key);
+                if (quote == null) {
+                    throw new IllegalArgumentException("No quote found for symbol " + symbol);
+                }
+                return quote;
+            });
+
+        Map<String, FanOutResult<StockDTO>> results = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            results.put(symbol, cached.containsKey(symbol) ? cached.get(symbol) : fetched.get(symbol));
+        }
+        return results;
+    }
+
+    /**
+     * Re-fetches the given symbols and updates the quote cache.
+     * Invoked asynchronously for stale cache entries so readers never wait on it.
+     * @return the number of quotes refreshed (0 if the refresh failed)
+     */
+    @Asynchronous
+    public Future<Integer> refreshQuotes(Collection<String> stockSymbols) {
+        List<String> symbols = normalizeSymbols(stockSymbols);
+        try {
+            return new AsyncResult<>(fetchQuotes(symbols).size());
+        } catch (Exception e) {
+            log.warn("Background refresh of {} quote(s) failed: {}", symbols.size(), e.getMessage());
+            return new AsyncResult<>(0);
+        } finally {
+            symbols.forEach(quoteCache::endRefresh);
+        }
+    }
+
     /**
      * Executes a buy order and returns the total cost (price per share * quantity).
      */
@@ -105,22 +398,24 @@ public class TradingService {
         log.info("Buying {} shares of {} via trading service", quantity, stockSymbol);
 
         try {
-            TradingWebService port = getPort();
-            BigDecimal pricePerShare = port.buy(stockSymbol.trim(), quantity);
+            BigDecimal pricePerShare = placeOrder(stockSymbol.trim(), quantity);
             if (pricePerShare == null) {
-                throw new IllegalStateException("Trading service returned no price for buy order of " + stockSymbol);
+                // The order reached the exchange, so this is no clean reject
+                throw new RuntimeException("Trading service returned no price for buy order of " + stockSymbol);
             }
             return pricePerShare.multiply(BigDecimal.valueOf(quantity));
         } catch (TradingWSException_Exception e) {
             throw new IllegalStateException("Trading service rejected buy order: " + faultMessage(e), e);
+        } catch (TradingUnavailableException e) {
+            throw e;
         } catch (WebServiceException e) {
+            // The order may or may not have reached the exchange, so it must not be booked
             log.error("Trading service communication failed for buy order of {}: {}", stockSymbol, e.getMessage());
-            // Return fixed price on failure
-            return BigDecimal.ONE.multiply(BigDecimal.valueOf(quantity));
+            throw translateWebServiceException("placing a buy order for " + stockSymbol, e);
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
-            log.error("Failed to execute buy order for {}: {}", stockSymbol, e.getMessage());
-            // Return fixed price on failure
-            return BigDecimal.ONE.multiply(BigDecimal.valueOf(quantity));
+            throw new RuntimeException("Failed to execute buy order for " + stockSymbol, e);
         }
     }
 
@@ -134,81 +429,406 @@ public class TradingService {
         log.info("Selling {} shares of {} via trading service", quantity, stockSymbol);
 
         try {
-            TradingWebService port = getPort();
-            BigDecimal pricePerShare = port.sell(stockSymbol.trim(), quantity);
+            BigDecimal pricePerShare = placeOrder(stockSymbol.trim(), -quantity);
             if (pricePerShare == null) {
-                throw new IllegalStateException("Trading service returned no price for sell order of " + stockSymbol);
+                // The order reached the exchange, so this is no clean reject
+                throw new RuntimeException("Trading service returned no price for sell order of " + stockSymbol);
             }
             return pricePerShare.multiply(BigDecimal.valueOf(quantity));
         } catch (TradingWSException_Exception e) {
             throw new IllegalStateException("Trading service rejected sell order: " + faultMessage(e), e);
+        } catch (TradingUnavailableException e) {
+            throw e;
         } catch (WebServiceException e) {
+            // The order may or may not have reached the exchange, so it must not be booked
             log.error("Trading service communication failed for sell order of {}: {}", stockSymbol, e.getMessage());
-            // Return fixed price on failure
-            return BigDecimal.ONE.multiply(BigDecimal.valueOf(quantity));
+            throw translateWebServiceException("placing a sell order for " + stockSymbol, e);
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
-            log.error("Failed to execute sell order for {}: {}", stockSymbol, e.getMessage());
-            // Return fixed price on failure
-            return BigDecimal.ONE.multiply(BigDecimal.valueOf(quantity));
+            throw new RuntimeException("Failed to execute sell order for " + stockSymbol, e);
+        }
+    }
+
+    /**
+     * Returns the company name of the symbol if it is known locally, from the quote
+     * cache (regardless of the quote's age) or the search index. Never calls the
+     * trading service.
+     */
+    public Optional<String> findCachedStockName(String stockSymbol) {
+        validateSymbol(stockSymbol);
+        String trimmed = stockSymbol.trim();
+
+        QuoteCache.CachedQuote cached = quoteCache.peek(trimmed);
+        if (cached != null && cached.getQuote().getName() != null) {
+            return Optional.of(cached.getQuote().getName());
         }
+        StockDTO indexed = searchIndex.lookup(trimmed);
+        return indexed == null ? Optional.empty() : Optional.ofNullable(indexed.getName());
+    }
+
+    /**
+     * Looks up the company name of the symbol in the background, so it can run
+     * concurrently with an order for the same symbol.
+     */
+    @Asynchronous
+    public Future<String> fetchStockName(String stockSymbol) {
+        return new AsyncResult<>(getStockDetails(stockSymbol).getName());
     }
 
     /**
      * Fetches detailed quote information for the given symbol.
+     * Served from the quote cache when possible.
      */
     public StockDTO getStockDetails(String stockSymbol) {
         validateSymbol(stockSymbol);
 
-        String trimmed = stockSymbol.trim();
+        String trimmed = QuoteCache.key(stockSymbol);
         log.debug("Fetching stock details for {}", trimmed);
+        popularity.record(Collections.singletonList(trimmed), 1.0);
 
-        try {
-            TradingWebService port = getPort();
-            List<PublicStockQuote> quotes = port.getStockQuotes(Collections.singletonList(trimmed));
+        QuoteCache.CachedQuote cached = quoteCache.lookup(trimmed);
+        if (cached != null) {
+            if (!cached.isFresh()) {
+                refreshInBackground(Collections.singletonList(trimmed));
+            }
+            return cached.getQuote();
+        }
 
-            if (quotes == null || quotes.isEmpty()) {
-                throw new IllegalArgumentException("No quote found for symbol " + trimmed);
+        StockDTO quote;
+        try {
+            quote = fetchQuotesCoalesced(Collections.singletonList(trimmed)).get(trimmed);
+        } catch (TradingUnavailableException e) {
+            quote = peekCached(Collections.singletonList(trimmed)).get(trimmed);
+            if (quote == null) {
+                throw e;
             }
+            log.warn("Trading service unavailable, serving cached quote for {}", trimmed);
+        }
+        if (quote == null) {
+            throw new IllegalArgumentException("No quote found for symbol " + trimmed);
+        }
+        return quote;
+    }
+
+    /**
+     * Returns the price history of a stock between {@code from} and {@code to}
+     * (epoch millis, both optional), downsampled to at most {@code points} points.
+     * The full history is downloaded once per symbol into the {@link QuoteHistoryStore}
+     * and kept current with every quote fetched afterwards.
+     */
+    public StockHistoryDTO getStockHistory(String stockSymbol, Long from, Long to, Integer points) {
+        validateSymbol(stockSymbol);
+        if (from != null && to != null && from > to) {
+            throw new IllegalArgumentException("History range start must not be after its end");
+        }
+        if (points != null && (points <= 0 || points > MAX_HISTORY_POINTS)) {
+            throw new IllegalArgumentException("Number of points must be between 1 and " + MAX_HISTORY_POINTS);
+        }
+
+        String trimmed = QuoteCache.key(stockSymbol);
+        int maxPoints = points != null ? points : getIntConfig("trading.history.defaultPoints")
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_HISTORY_POINTS);
+
+        if (!historyStore.contains(trimmed)) {
+            loadHistory(trimmed);
+        }
+
+        QuoteHistoryStore.Range range = historyStore.query(trimmed,
+            from != null ? from : Long.MIN_VALUE, to != null ? to : Long.MAX_VALUE, maxPoints);
+        if (range == null) {
+            throw new IllegalStateException("History of " + trimmed + " is not available");
+        }
+
+        StockHistoryDTO history = new StockHistoryDTO(trimmed, DEFAULT_CURRENCY);
+        history.setTotalPoints(range.getTotalPoints());
+        history.setPoints(range.getPoints());
+        return history;
+    }
 
-            return toDto(quotes.get(0));
+    /**
+     * Downloads the full history of a symbol into the history store. Concurrent
+     * first requests for the same symbol share one download.
+     */
+    private void loadHistory(String symbol) {
+        log.info("Loading quote history for {}", symbol);
+        try {
+            coalescer.execute(HISTORY_KEY_PREFIX + symbol, getCoalescingDeadline(), () -> {
+                List<PublicStockQuote> quotes = hedgedCall(OP_HISTORY, port -> port.getStockQuoteHistory(symbol));
+                List<PublicStockQuote> valid = quotes == null ? Collections.emptyList() : quotes.stream()
+                    .filter(quote -> quote != null && quote.getLastTradeTime() != null && quote.getLastTradePrice() != null)
+                    .collect(Collectors.toList());
+
+                long[] timestamps = new long[valid.size()];
+                BigDecimal[] prices = new BigDecimal[valid.size()];
+                for (int i = 0; i < valid.size(); i++) {
+                    timestamps[i] = toEpochMillis(valid.get(i).getLastTradeTime());
+                    prices[i] = valid.get(i).getLastTradePrice();
+                }
+                historyStore.load(symbol, timestamps, prices);
+                return valid.size();
+            });
         } catch (TradingWSException_Exception e) {
-            throw new IllegalStateException("Trading service rejected symbol " + stockSymbol + ": " + faultMessage(e), e);
+            throw new IllegalArgumentException("Trading service has no history for " + symbol + ": " + faultMessage(e), e);
         } catch (WebServiceException e) {
-            throw translateWebServiceException("loading stock details for " + stockSymbol, e);
+            throw translateWebServiceException("loading the history of " + symbol, e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load the history of " + symbol, e);
+        }
+    }
+
+    /**
+     * Places a buy (positive quantity) or sell (negative quantity) order and returns
+     * the price per share. With order aggregation enabled the order is netted with
+     * concurrent orders for the same symbol by the {@link OrderAggregator}.
+     */
+    private BigDecimal placeOrder(String symbol, int signedQuantity) throws TradingWSException_Exception {
+        if (!orderAggregator.isEnabled()) {
+            return signedQuantity > 0
+                ? call(OP_BUY, port -> port.buy(symbol, signedQuantity))
+                : call(OP_SELL, port -> port.sell(symbol, -signedQuantity));
+        }
+
+        try {
+            return orderAggregator.execute(symbol, signedQuantity, net -> {
+                if (net > 0) {
+                    return call(OP_BUY, port -> port.buy(symbol, net));
+                }
+                if (net < 0) {
+                    return call(OP_SELL, port -> port.sell(symbol, -net));
+                }
+                // Buys and sells cancelled out, cross them at a freshly fetched quote
+                return fetchCurrentPrice(symbol);
+            });
+        } catch (TradingWSException_Exception | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to place order for " + symbol, e);
+        }
+    }
+
+    /**
+     * Fetches the current price of a symbol from the trading service, bypassing the
+     * quote cache; orders must not be priced at a cached quote
+     */
+    private BigDecimal fetchCurrentPrice(String symbol) throws TradingWSException_Exception {
+        List<PublicStockQuote> quotes = call(OP_GET_QUOTES, port -> port.getStockQuotes(Collections.singletonList(symbol)));
+        if (quotes != null) {
+            for (PublicStockQuote quote : quotes) {
+                if (quote != null && quote.getSymbol() != null && quote.getLastTradePrice() != null
+                        && QuoteCache.key(quote.getSymbol()).equals(QuoteCache.key(symbol))) {
+                    return cacheQuote(quote).getCurrentPrice();
+                }
+            }
+        }
+        throw new IllegalArgumentException("No quote found for symbol " + symbol);
+    }
+
+    /**
+     * Calls {@code findStockQuotesByCompanyName} through the port's payload dispatch
+     * and parses the response with StAX, so the full JAXB object graph of a large
+     * response is never built. Simulated ports have no dispatch and use the
+     * generated client instead. Not hedged, as the consumer must see each quote once.
+     */
+    private int streamQuotesByCompanyName(String needle, Consumer<PublicStockQuote> consumer) throws TradingWSException_Exception {
+        Consumer<PublicStockQuote> sink = quote -> {
+            if (quote.getSymbol() != null) {
+                consumer.accept(quote);
+            }
+        };
+
+        return withLease(OP_FIND_BY_NAME, lease -> {
+            Dispatch<Source> dispatch = lease.getDispatch();
+            if (dispatch == null) {
+                List<PublicStockQuote> quotes = lease.getPort().findStockQuotesByCompanyName(needle);
+                if (quotes == null) {
+                    return 0;
+                }
+                quotes.forEach(sink);
+                return quotes.size();
+            }
+
+            String request = "<tns:findStockQuotesByCompanyName xmlns:tns=\"" + TRADING_NAMESPACE + "\">"
+                + "<partOfCompanyName>" + escapeXml(needle) + "</partOfCompanyName>"
+                + "</tns:findStockQuotesByCompanyName>";
+            try {
+                Source response = dispatch.invoke(new StreamSource(new StringReader(request)));
+                return new StreamingQuoteParser().parse(response, sink);
+            } catch (SOAPFaultException e) {
+                // Payload mode does not map faults to TradingWSException, do it here
+                String reason = e.getFault() != null ? e.getFault().getFaultString() : safeMessage(e);
+                TradingWSException faultInfo = new TradingWSException();
+                faultInfo.setMessage(reason);
+                throw new TradingWSException_Exception(reason, faultInfo, e);
+            } catch (XMLStreamException e) {
+                throw new WebServiceException("Unable to parse trading service response", e);
+            }
+        });
+    }
+
+    /**
+     * Fetches cache misses in one batch. If the exchange rejects the batch, the
+     * symbols are retried individually in parallel so one bad symbol does not
+     * fail all others.
+     */
+    private Map<String, StockDTO> fetchMissingQuotes(List<String> symbols) {
+        try {
+            return fetchQuotesCoalesced(symbols);
+        } catch (IllegalStateException e) {
+            if (symbols.size() < 2 || !(e.getCause() instanceof TradingWSException_Exception)) {
+                throw e;
+            }
+            log.warn("Batch quote request for {} symbols rejected ({}), retrying per symbol", symbols.size(), e.getMessage());
+        }
+
+        Map<String, StockDTO> quotes = new LinkedHashMap<>();
+        getStockQuotesParallel(symbols).forEach((symbol, result) -> {
+            if (result.isSuccess()) {
+                quotes.put(symbol, result.getValue());
+            } else {
+                log.warn("No quote for {}: {}", symbol, result.getError());
+            }
+        });
+        return quotes;
+    }
+
+    /**
+     * Loads quotes like {@link #fetchQuotes(List)}, but symbols that another thread
+     * is already fetching are not requested again; their in-flight result is awaited.
+     */
+    private Map<String, StockDTO> fetchQuotesCoalesced(List<String> symbols) {
+        try {
+            return coalescer.executeAll(QUOTE_KEY_PREFIX, symbols, getCoalescingDeadline(), this::fetchQuotes);
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
-            throw new RuntimeException("Failed to load stock details for " + stockSymbol, e);
+            throw new RuntimeException("Failed to load stock quotes for " + symbols, e);
         }
     }
 
-    private TradingWebService getPort() {
+    /**
+     * Loads quotes from the trading service in batches of {@code trading.ws.batchSize}
+     * symbols and stores them in the quote cache.
+     */
+    private Map<String, StockDTO> fetchQuotes(List<String> symbols) {
+        if (symbols.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        log.debug("Fetching {} stock quote(s) in batches", symbols.size());
+
+        Map<String, StockDTO> quotes = new LinkedHashMap<>();
+        int batchSize = getQuoteBatchSize();
+
         try {
-            TradingWebServiceService service = tradingWebServiceService != null ? tradingWebServiceService : new TradingWebServiceService();
-            TradingWebService port = service.getTradingWebServicePort();
-            configurePort((BindingProvider) port);
-            return port;
+            for (int from = 0; from < symbols.size(); from += batchSize) {
+                List<String> batch = symbols.subList(from, Math.min(from + batchSize, symbols.size()));
+                List<PublicStockQuote> result = hedgedCall(OP_GET_QUOTES, port -> port.getStockQuotes(batch));
+                if (result == null) {
+                    continue;
+                }
+                // Key each quote by the requested spelling, which may differ in case
+                Map<String, String> requested = new HashMap<>();
+                batch.forEach(symbol -> requested.putIfAbsent(QuoteCache.key(symbol), symbol));
+                for (PublicStockQuote quote : result) {
+                    if (quote != null && quote.getSymbol() != null) {
+                        String symbol = requested.getOrDefault(QuoteCache.key(quote.getSymbol()), quote.getSymbol());
+                        quotes.put(symbol, cacheQuote(quote));
+                    }
+                }
+            }
+        } catch (TradingWSException_Exception e) {
+            throw new IllegalStateException("Trading service rejected symbols " + symbols + ": " + faultMessage(e), e);
         } catch (WebServiceException e) {
-            throw new RuntimeException("Unable to initialise trading web service client", e);
+            throw translateWebServiceException("loading stock quotes for " + symbols, e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load stock quotes for " + symbols, e);
         }
+        return quotes;
     }
 
-    private void configurePort(BindingProvider bindingProvider) {
-        getConfigValue("trading.ws.endpoint")
-            .filter(url -> !url.isBlank())
-            .ifPresent(url -> bindingProvider.getRequestContext().put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, url));
+    private Map<String, StockDTO> peekCached(List<String> symbols) {
+        Map<String, StockDTO> quotes = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            QuoteCache.CachedQuote entry = quoteCache.peek(symbol);
+            if (entry != null) {
+                quotes.put(symbol, entry.getQuote());
+            }
+        }
+        return quotes;
+    }
 
-        getConfigValue("trading.ws.username")
-            .filter(username -> !username.isBlank())
-            .ifPresent(username -> bindingProvider.getRequestContext().put(BindingProvider.USERNAME_PROPERTY, username));
+    /**
+     * Triggers an asynchronous refresh for those symbols not already being refreshed.
+     */
+    private void refreshInBackground(List<String> staleSymbols) {
+        List<String> toRefresh = staleSymbols.stream()
+            .filter(quoteCache::beginRefresh)
+            .collect(Collectors.toList());
+        if (!toRefresh.isEmpty()) {
+            sessionContext.getBusinessObject(TradingService.class).refreshQuotes(toRefresh);
+        }
+    }
 
-        getConfigValue("trading.ws.password")
-            .filter(password -> !password.isBlank())
-            .ifPresent(password -> bindingProvider.getRequestContext().put(BindingProvider.PASSWORD_PROPERTY, password));
+    /**
+     * Runs the given call on a port checked out of the pool, guarded by the
+     * circuit breaker and bulkhead. The request timeout is adapted to the
+     * operation's observed latency and the call's duration is recorded.
+     */
+    private <T> T call(String operation, PortCall<T> portCall) throws TradingWSException_Exception {
+        return withLease(operation, lease -> portCall.invoke(lease.getPort()));
+    }
 
-        getIntConfig("trading.ws.connectTimeout")
-            .ifPresent(timeout -> bindingProvider.getRequestContext().put(CONNECT_TIMEOUT_PROPERTY, timeout));
+    /**
+     * Like {@link #call(String, PortCall)}, for calls that need the lease itself.
+     */
+    private <T> T withLease(String operation, LeaseCall<T> leaseCall) throws TradingWSException_Exception {
+        TradingCircuitBreaker.Permit permit = circuitBreaker.acquirePermission();
+        TradingCircuitBreaker.Outcome outcome = TradingCircuitBreaker.Outcome.IGNORED;
+        long start = 0;
+        try (TradingPortPool.Lease lease = portPool.borrow()) {
+            Integer configuredTimeout = lease.getConfiguredRequestTimeout();
+            // A timed out order may still be filled, so orders keep the configured timeout
+            if (configuredTimeout != null && !OP_BUY.equals(operation) && !OP_SELL.equals(operation)) {
+                long timeout = latencyTracker.requestTimeout(operation, configuredTimeout);
+                if (timeout < configuredTimeout) {
+                    lease.setRequestTimeout((int) timeout);
+                }
+            }
+            outcome = TradingCircuitBreaker.Outcome.FAILURE;
+            start = System.nanoTime();
+            T result = leaseCall.invoke(lease);
+            outcome = TradingCircuitBreaker.Outcome.SUCCESS;
+            return result;
+        } catch (TradingWSException_Exception e) {
+            // The exchange answered, so it is reachable
+            outcome = TradingCircuitBreaker.Outcome.SUCCESS;
+            throw e;
+        } finally {
+            if (outcome != TradingCircuitBreaker.Outcome.IGNORED) {
+                latencyTracker.record(operation, (System.nanoTime() - start) / 1_000_000);
+            }
+            circuitBreaker.complete(permit, outcome);
+        }
+    }
 
-        getIntConfig("trading.ws.requestTimeout")
-            .ifPresent(timeout -> bindingProvider.getRequestContext().put(REQUEST_TIMEOUT_PROPERTY, timeout));
+    /**
+     * Like {@link #call(String, PortCall)}, but hedged by the {@link HedgedInvoker}.
+     * Only for idempotent reads.
+     */
+    private <T> T hedgedCall(String operation, PortCall<T> portCall) throws TradingWSException_Exception {
+        try {
+            return hedgedInvoker.invoke(operation, () -> call(operation, portCall));
+        } catch (TradingWSException_Exception | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Trading service call " + operation + " failed", e);
+        }
     }
 
     private Optional<String> getConfigValue(String key) {
@@ -219,6 +839,39 @@ public class TradingService {
         return config == null ? Optional.empty() : config.getOptionalValue(key, Integer.class);
     }
 
+    private Optional<Long> getLongConfig(String key) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, Long.class);
+    }
+
+    private long getCoalescingDeadline() {
+        return getLongConfig("trading.ws.coalescing.deadline")
+            .filter(deadline -> deadline > 0)
+            .orElse(DEFAULT_COALESCING_DEADLINE_MILLIS);
+    }
+
+    private int getSearchLimit() {
+        return getIntConfig("trading.search.maxResults")
+            .filter(limit -> limit > 0)
+            .orElse(DEFAULT_SEARCH_LIMIT);
+    }
+
+    private int getQuoteBatchSize() {
+        return getIntConfig("trading.ws.batchSize")
+            .filter(size -> size > 0)
+            .orElse(DEFAULT_QUOTE_BATCH_SIZE);
+    }
+
+    private List<String> normalizeSymbols(Collection<String> stockSymbols) {
+        if (stockSymbols == null) {
+            return Collections.emptyList();
+        }
+        return stockSymbols.stream()
+            .filter(symbol -> symbol != null && !symbol.isBlank())
+            .map(String::trim)
+            .distinct()
+            .collect(Collectors.toList());
+    }
+
     private List<String> getDefaultSymbols() {
         return getConfigValue("trading.ws.defaultSymbols")
             .map(value -> Arrays.stream(value.split(","))
@@ -230,6 +883,12 @@ public class TradingService {
     }
 
     private List<StockDTO> fallbackQuotes(String needle) {
+        List<StockDTO> cached = quoteCache.findMatching(needle);
+        if (!cached.isEmpty()) {
+            log.warn("Returning {} cached quote(s) for search '{}'", cached.size(), needle);
+            return cached;
+        }
+
         String lowered = needle == null ? "" : needle.toLowerCase();
         List<StockDTO> fallback = getDefaultSymbols().stream()
             .filter(symbol -> lowered.isBlank() || symbol.toLowerCase().contains(lowered))
@@ -243,10 +902,36 @@ public class TradingService {
             })
             .collect(Collectors.toList());
 
-        log.warn("Returning {} fallback quote(s) for search '{}' due to trading service authentication failure", fallback.size(), needle);
+        log.warn("Returning {} fallback quote(s) for search '{}' due to trading service failure", fallback.size(), needle);
         return fallback;
     }
 
+    /**
+     * A search counts as one request, spread over all symbols it returned.
+     */
+    private void recordSearchResults(List<StockDTO> results) {
+        popularity.record(results.stream().map(StockDTO::getSymbol).collect(Collectors.toList()), 1.0 / results.size());
+    }
+
+    private StockDTO cacheQuote(PublicStockQuote quote) {
+        StockDTO dto = toDto(quote);
+        Long lastTradeTime = toEpochMillis(quote.getLastTradeTime());
+        quoteCache.put(dto, lastTradeTime);
+        searchIndex.index(dto);
+        if (lastTradeTime != null && quote.getLastTradePrice() != null) {
+            historyStore.append(QuoteCache.key(dto.getSymbol()), lastTradeTime, quote.getLastTradePrice());
+        }
+        if (quote.getLastTradePrice() != null) {
+            valuationCache.updatePrice(dto.getSymbol(), quote.getLastTradePrice(),
+                lastTradeTime != null ? lastTradeTime : System.currentTimeMillis());
+        }
+        return dto;
+    }
+
+    private Long toEpochMillis(XMLGregorianCalendar time) {
+        return time == null ? null : time.toGregorianCalendar().getTimeInMillis();
+    }
+
     private StockDTO toDto(PublicStockQuote quote) {
         if (quote == null) {
             return new StockDTO();
@@ -306,6 +991,20 @@ public class TradingService {
         return false;
     }
 
+    private static String escapeXml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    @FunctionalInterface
+    private interface PortCall<T> {
+        T invoke(TradingWebService port) throws TradingWSException_Exception;
+    }
+
+    @FunctionalInterface
+    private interface LeaseCall<T> {
+        T invoke(TradingPortPool.Lease lease) throws TradingWSException_Exception;
+    }
+
     private boolean isHttpUnauthorized(Throwable throwable) {
         if (throwable instanceof HTTPException) {
             int responseCode = ((HTTPException) throwable).getStatusCode();
@@ -0,0 +1,200 @@
+package net.froihofer.dsfinance.bank.ejb.service;
+
+import jakarta.annotation.Resource;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import net.froihofer.dsfinance.bank.ejb.entity.VolumeReservation;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Service Bean for two-phase bank volume reservations of buy orders.
+ *
+ * {@link #reserve} holds the estimated cost in its own short transaction before the
+ * order is sent to the exchange, which then runs without a transaction.
+ * {@link #confirm} settles the difference to the actual fill in the booking
+ * transaction; {@link #release} returns the volume if the order failed. Reservations
+ * neither confirmed nor released within {@code bank.volume.reservation.ttl} seconds
+ * are returned by a timer, unless {@link #markFilledUnbooked} kept them for
+ * reconciliation.
+ * @PermitAll allows access from REST endpoints which have their own security
+ */
+@Stateless
+@PermitAll
+public class VolumeReservationService {
+    private static final Logger log = LoggerFactory.getLogger(VolumeReservationService.class);
+
+    private static final long DEFAULT_TTL_SECONDS = 120;
+    private static final BigDecimal DEFAULT_MARGIN = new BigDecimal("0.05");
+    private static final int EXPIRY_BATCH_SIZE = 100;
+
+    @PersistenceContext(unitName = "ds-finance-bank-ref-persunit")
+    private EntityManager em;
+
+    @Resource
+    private SessionContext sessionContext;
+
+    @EJB
+    private BankVolumeService bankVolumeService;
+
+    @Inject
+    private Config config;
+
+    /**
+     * Amount to reserve for an order: the estimated cost plus
+     * {@code bank.volume.reservation.margin} for price moves until the fill
+     */
+    public BigDecimal withMargin(BigDecimal estimatedCost) {
+        BigDecimal margin = getConfig("bank.volume.reservation.margin", BigDecimal.class)
+            .filter(value -> value.signum() >= 0)
+            .orElse(DEFAULT_MARGIN);
+        return estimatedCost.multiply(BigDecimal.ONE.add(margin)).setScale(2, RoundingMode.UP);
+    }
+
+    /**
+     * Takes the amount from the bank volume and records the reservation
+     * @return the reservation id
+     * @throws IllegalStateException if the available volume is insufficient
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Long reserve(String customerNumber, String tradeRef, BigDecimal amount) {
+        if (!bankVolumeService.reserveVolume(customerNumber, tradeRef, amount)) {
+            throw new IllegalStateException("Insufficient bank volume for this transaction");
+        }
+        long ttl = getConfig("bank.volume.reservation.ttl", Long.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_TTL_SECONDS);
+        VolumeReservation reservation = new VolumeReservation(tradeRef, customerNumber, amount,
+            OffsetDateTime.now().plusSeconds(ttl));
+        em.persist(reservation);
+        log.debug("Reserved {} of bank volume for trade {} (reservation {})", amount, tradeRef, reservation.getId());
+        return reservation.getId();
+    }
+
+    /**
+     * Settles the reservation with the actual cost of the fill. Joins the caller's
+     * transaction, so the settlement commits together with the booking.
+     * If the reservation expired meanwhile, the full cost is taken again. A fill the
+     * remaining volume cannot cover is booked anyway, as the exchange executed it.
+     */
+    public void confirm(Long reservationId, BigDecimal actualAmount) {
+        VolumeReservation reservation = lock(reservationId);
+        if (reservation.getStatus() == VolumeReservation.Status.CONFIRMED) {
+            throw new IllegalStateException("Reservation " + reservationId + " is already confirmed");
+        }
+
+        // A released or expired reservation has already been returned to the bank volume
+        boolean held = reservation.getStatus() == VolumeReservation.Status.RESERVED
+            || reservation.getStatus() == VolumeReservation.Status.FILLED_UNBOOKED;
+        BigDecimal difference = actualAmount.subtract(held ? reservation.getAmount() : BigDecimal.ZERO);
+        String customerNumber = reservation.getCustomerNumber();
+        String tradeRef = reservation.getTradeRef();
+        if (difference.signum() > 0 && !bankVolumeService.reserveVolume(customerNumber, tradeRef, difference)) {
+            log.error("Fill of trade {} exceeds its reservation by {} and the bank volume cannot cover it", tradeRef, difference);
+            bankVolumeService.overdrawVolume(customerNumber, tradeRef, difference);
+        } else if (difference.signum() < 0) {
+            bankVolumeService.increaseVolume(customerNumber, tradeRef, difference.negate());
+        }
+
+        reservation.setStatus(VolumeReservation.Status.CONFIRMED);
+        reservation.setConfirmedAmount(actualAmount);
+        reservation.setUpdatedAt(OffsetDateTime.now());
+    }
+
+    /**
+     * Returns the reserved volume, e.g. because the order failed
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void release(Long reservationId) {
+        returnVolume(lock(reservationId), VolumeReservation.Status.RELEASED);
+    }
+
+    /**
+     * Keeps the volume of an order that was executed at the exchange but could not be
+     * booked, or whose outcome is unknown: the reservation is marked for
+     * reconciliation, so it never expires
+     * @param actualAmount the cost of the fill, or null if not known
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void markFilledUnbooked(Long reservationId, BigDecimal actualAmount) {
+        VolumeReservation reservation = lock(reservationId);
+        if (reservation.getStatus() != VolumeReservation.Status.RESERVED) {
+            log.error("Reservation {} of unbooked trade {} is already {}", reservationId, reservation.getTradeRef(),
+                reservation.getStatus());
+            return;
+        }
+        reservation.setStatus(VolumeReservation.Status.FILLED_UNBOOKED);
+        reservation.setConfirmedAmount(actualAmount);
+        reservation.setUpdatedAt(OffsetDateTime.now());
+    }
+
+    /**
+     * Returns the reserved volume if the reservation is still open and has expired
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void expire(Long reservationId) {
+        VolumeReservation reservation = lock(reservationId);
+        if (reservation.getExpiresAt().isBefore(OffsetDateTime.now())
+                && returnVolume(reservation, VolumeReservation.Status.EXPIRED)) {
+            log.warn("Reservation {} of {} for trade {} expired", reservationId, reservation.getAmount(), reservation.getTradeRef());
+        }
+    }
+
+    /**
+     * Returns the volume of expired reservations, each in its own transaction
+     */
+    @Schedule(hour = "*", minute = "*", persistent = false)
+    public void expireReservations() {
+        List<Long> expired = em.createNamedQuery("VolumeReservation.findExpired", Long.class)
+            .setParameter("reserved", VolumeReservation.Status.RESERVED)
+            .setParameter("now", OffsetDateTime.now())
+            .setMaxResults(EXPIRY_BATCH_SIZE)
+            .getResultList();
+        VolumeReservationService self = sessionContext.getBusinessObject(VolumeReservationService.class);
+        for (Long reservationId : expired) {
+            try {
+                self.expire(reservationId);
+            } catch (Exception e) {
+                log.error("Failed to expire reservation {}: {}", reservationId, e.getMessage());
+            }
+        }
+    }
+
+    private boolean returnVolume(VolumeReservation reservation, VolumeReservation.Status status) {
+        if (reservation.getStatus() != VolumeReservation.Status.RESERVED) {
+            return false;
+        }
+        bankVolumeService.increaseVolume(reservation.getCustomerNumber(), reservation.getTradeRef(), reservation.getAmount());
+        reservation.setStatus(status);
+        reservation.setUpdatedAt(OffsetDateTime.now());
+        return true;
+    }
+
+    private VolumeReservation lock(Long reservationId) {
+        VolumeReservation reservation = em.find(VolumeReservation.class, reservationId, LockModeType.PESSIMISTIC_WRITE);
+        if (reservation == null) {
+            throw new IllegalStateException("Reservation not found: " + reservationId);
+        }
+        return reservation;
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+}
@@ -39,6 +39,8 @@ public class BankInitializer {
             // Bank Volume initialisieren
             bankVolumeService.initializeBankVolume();
             log.info("✓ Bank Volume initialized: 1,000,000,000 USD");
+            bankVolumeService.configureShards();
+            bankVolumeService.openJournal();
 
             log.info("=".repeat(80));
             log.info("DS Finance Bank - Initialization Complete");
@@ -0,0 +1,171 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Runs independent trading service calls in parallel on the container's managed
+ * executor. At most {@code trading.ws.fanout.maxConcurrency} calls of one fan-out
+ * run at the same time and the whole fan-out is bounded by
+ * {@code trading.ws.fanout.deadline} ms, so its wall-clock time follows the
+ * slowest call instead of the sum of all calls. Failed or unfinished calls are
+ * reported per key instead of failing the whole fan-out.
+ */
+@Singleton
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class FanOutExecutor {
+    private static final Logger log = LoggerFactory.getLogger(FanOutExecutor.class);
+
+    private static final int DEFAULT_MAX_CONCURRENCY = 8;
+    private static final long DEFAULT_DEADLINE_MILLIS = 15_000;
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    @Inject
+    private Config config;
+
+    private final AtomicLong fanOuts = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private int maxConcurrency;
+    private long deadlineMillis;
+
+    @PostConstruct
+    public void init() {
+        maxConcurrency = getConfig("trading.ws.fanout.maxConcurrency", Integer.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_MAX_CONCURRENCY);
+        deadlineMillis = getConfig("trading.ws.fanout.deadline", Long.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_DEADLINE_MILLIS);
+    }
+
+    /**
+     * Fans out with the configured concurrency cap and deadline.
+     */
+    public <T> Map<String, FanOutResult<T>> invokeAll(Collection<String> keys, Function<String, T> call) {
+        return invokeAll(keys, call, maxConcurrency, deadlineMillis);
+    }
+
+    /**
+     * Invokes {@code call} once per distinct key in parallel and returns one result
+     * per key, in key order.
+     */
+    public <T> Map<String, FanOutResult<T>> invokeAll(Collection<String> keys, Function<String, T> call,
+                                                      int concurrency, long deadline) {
+        fanOuts.incrementAndGet();
+        long deadlineAt = System.currentTimeMillis() + deadline;
+        Semaphore permits = new Semaphore(Math.max(1, concurrency));
+
+        Map<String, Future<T>> futures = new LinkedHashMap<>();
+        Map<String, FanOutResult<T>> results = new LinkedHashMap<>();
+
+        for (String key : new LinkedHashSet<>(keys)) {
+            calls.incrementAndGet();
+            if (!acquire(permits, deadlineAt)) {
+                results.put(key, timedOut(key, deadline));
+                continue;
+            }
+            try {
+                futures.put(key, executor.submit(() -> {
+                    try {
+                        return call.apply(key);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                failures.incrementAndGet();
+                results.put(key, FanOutResult.failure("Rejected by executor: " + e.getMessage()));
+            }
+        }
+
+        for (Map.Entry<String, Future<T>> entry : futures.entrySet()) {
+            String key = entry.getKey();
+            Future<T> future = entry.getValue();
+            long remaining = Math.max(0, deadlineAt - System.currentTimeMillis());
+            try {
+                results.put(key, FanOutResult.success(future.get(remaining, TimeUnit.MILLISECONDS)));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                results.put(key, timedOut(key, deadline));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                results.put(key, FanOutResult.failure("Interrupted"));
+            } catch (ExecutionException e) {
+                failures.incrementAndGet();
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                log.debug("Fan-out call for '{}' failed: {}", key, cause.getMessage());
+                results.put(key, FanOutResult.failure(cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName()));
+            }
+        }
+
+        // Restore key order, timed out keys may have been recorded early
+        Map<String, FanOutResult<T>> ordered = new LinkedHashMap<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            ordered.put(key, results.get(key));
+        }
+        return ordered;
+    }
+
+    /**
+     * Fan-out counters.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxConcurrency", maxConcurrency);
+        stats.put("deadlineMillis", deadlineMillis);
+        stats.put("fanOuts", fanOuts.get());
+        stats.put("calls", calls.get());
+        stats.put("failures", failures.get());
+        stats.put("timeouts", timeouts.get());
+        return stats;
+    }
+
+    private boolean acquire(Semaphore permits, long deadlineAt) {
+        try {
+            return permits.tryAcquire(Math.max(0, deadlineAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private <T> FanOutResult<T> timedOut(String key, long deadline) {
+        timeouts.incrementAndGet();
+        return FanOutResult.timeout("No result for '" + key + "' within " + deadline + " ms");
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+}
@@ -0,0 +1,54 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+/**
+ * Outcome of one call of a parallel fan-out: either a value or an error marker.
+ */
+public final class FanOutResult<T> {
+
+    /**
+     * Per-key status of a fan-out call.
+     */
+    public enum Status {
+        OK,
+        FAILED,
+        TIMED_OUT
+    }
+
+    private final Status status;
+    private final T value;
+    private final String error;
+
+    private FanOutResult(Status status, T value, String error) {
+        this.status = status;
+        this.value = value;
+        this.error = error;
+    }
+
+    public static <T> FanOutResult<T> success(T value) {
+        return new FanOutResult<>(Status.OK, value, null);
+    }
+
+    public static <T> FanOutResult<T> failure(String error) {
+        return new FanOutResult<>(Status.FAILED, null, error);
+    }
+
+    public static <T> FanOutResult<T> timeout(String error) {
+        return new FanOutResult<>(Status.TIMED_OUT, null, error);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isSuccess() {
+        return status == Status.OK;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
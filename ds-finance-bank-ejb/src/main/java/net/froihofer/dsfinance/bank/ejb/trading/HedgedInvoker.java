@@ -0,0 +1,180 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hedged execution of idempotent Trading web service reads.
+ *
+ * The call is started on the managed executor. If it has not completed once the
+ * operation's observed p95 (see {@link LatencyTracker}) has passed, an identical
+ * second attempt is started and whichever completes first wins. The other one is
+ * left to finish without being interrupted, so it is not counted as a failure by
+ * the circuit breaker. Hedges are limited to {@code trading.ws.hedge.maxRatio} of
+ * all calls by a token budget, so a slow exchange does not receive twice the load.
+ *
+ * Only use this for operations that are safe to execute twice.
+ */
+@Singleton
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class HedgedInvoker {
+    private static final Logger log = LoggerFactory.getLogger(HedgedInvoker.class);
+
+    private static final double DEFAULT_MAX_RATIO = 0.1;
+    private static final long DEFAULT_MIN_DELAY_MILLIS = 20;
+    private static final double MAX_TOKENS = 10.0;
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    @EJB
+    private LatencyTracker latencyTracker;
+
+    @Inject
+    private Config config;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    private boolean enabled;
+    private double maxRatio;
+    private long minDelayMillis;
+
+    // guarded by this
+    private double tokens = MAX_TOKENS;
+
+    @PostConstruct
+    public void init() {
+        enabled = getConfig("trading.ws.hedge.enabled", Boolean.class).orElse(true);
+        maxRatio = getConfig("trading.ws.hedge.maxRatio", Double.class).filter(value -> value >= 0).orElse(DEFAULT_MAX_RATIO);
+        minDelayMillis = getConfig("trading.ws.hedge.minDelay", Long.class).filter(value -> value >= 0).orElse(DEFAULT_MIN_DELAY_MILLIS);
+    }
+
+    /**
+     * Runs the attempt, hedging it after the operation's p95. Without enough latency
+     * samples, or with hedging disabled, the attempt simply runs on the caller's thread.
+     */
+    public <T> T invoke(String operation, Callable<T> attempt) throws Exception {
+        calls.incrementAndGet();
+        earnToken();
+
+        Optional<Long> p95 = enabled ? latencyTracker.percentile(operation, 95) : Optional.empty();
+        if (p95.isEmpty()) {
+            return attempt.call();
+        }
+        long delay = Math.max(minDelayMillis, p95.get());
+
+        CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        Future<T> primary;
+        try {
+            primary = completion.submit(attempt);
+        } catch (RejectedExecutionException e) {
+            return attempt.call();
+        }
+
+        Future<T> hedge = null;
+        try {
+            Future<T> first = completion.poll(delay, TimeUnit.MILLISECONDS);
+            if (first != null) {
+                return first.get();
+            }
+
+            if (!spendToken()) {
+                budgetExhausted.incrementAndGet();
+                return primary.get();
+            }
+            try {
+                hedge = completion.submit(attempt);
+                hedges.incrementAndGet();
+                log.debug("Hedging {} after {} ms", operation, delay);
+            } catch (RejectedExecutionException e) {
+                return primary.get();
+            }
+
+            Future<T> winner = completion.take();
+            try {
+                T result = winner.get();
+                if (winner == hedge) {
+                    hedgeWins.incrementAndGet();
+                }
+                return result;
+            } catch (ExecutionException e) {
+                // The first attempt to finish failed; the other one may still succeed
+                Future<T> other = winner == hedge ? primary : hedge;
+                return other.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for trading service call " + operation, e);
+        } finally {
+            primary.cancel(false);
+            if (hedge != null) {
+                hedge.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Hedge counters.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("maxRatio", maxRatio);
+        stats.put("calls", calls.get());
+        stats.put("hedges", hedges.get());
+        stats.put("hedgeWins", hedgeWins.get());
+        stats.put("budgetExhausted", budgetExhausted.get());
+        return stats;
+    }
+
+    private synchronized void earnToken() {
+        tokens = Math.min(MAX_TOKENS, tokens + maxRatio);
+    }
+
+    private synchronized boolean spendToken() {
+        if (tokens < 1.0) {
+            return false;
+        }
+        tokens -= 1.0;
+        return true;
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+}
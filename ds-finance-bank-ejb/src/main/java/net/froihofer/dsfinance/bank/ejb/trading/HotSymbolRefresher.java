@@ -0,0 +1,160 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.inject.Inject;
+import net.froihofer.dsfinance.bank.ejb.service.TradingService;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the quotes of the most requested symbols warm.
+ *
+ * Every {@code trading.hot.refreshInterval} ms the top {@code trading.hot.topN}
+ * symbols by {@link SymbolPopularity} score are re-fetched with one batched
+ * {@code getStockQuotes} call (the count is capped at {@code trading.ws.batchSize}).
+ * A tick is skipped while the previous refresh is still running, so the outbound rate
+ * is at most one call per interval regardless of user traffic.
+ */
+@Singleton
+@Startup
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class HotSymbolRefresher {
+    private static final Logger log = LoggerFactory.getLogger(HotSymbolRefresher.class);
+
+    private static final long DEFAULT_INTERVAL_MILLIS = 15_000;
+    private static final int DEFAULT_TOP_N = 50;
+    private static final double DEFAULT_MIN_SCORE = 1.0;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    @Resource
+    private TimerService timerService;
+
+    @EJB
+    private SymbolPopularity popularity;
+
+    @EJB
+    private TradingService tradingService;
+
+    @Inject
+    private Config config;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong skippedTicks = new AtomicLong();
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong refreshedQuotes = new AtomicLong();
+    private final AtomicLong failedTicks = new AtomicLong();
+
+    private volatile Future<Integer> pendingRefresh;
+
+    private long intervalMillis;
+    private int topN;
+    private double minScore;
+
+    @PostConstruct
+    public void init() {
+        intervalMillis = getConfig("trading.hot.refreshInterval", Long.class).orElse(DEFAULT_INTERVAL_MILLIS);
+        int batchSize = getConfig("trading.ws.batchSize", Integer.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_BATCH_SIZE);
+        topN = Math.min(batchSize, getConfig("trading.hot.topN", Integer.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_TOP_N));
+        minScore = getConfig("trading.hot.minScore", Double.class)
+            .filter(value -> value >= 0)
+            .orElse(DEFAULT_MIN_SCORE);
+
+        if (intervalMillis <= 0) {
+            log.info("Hot symbol refresher disabled");
+            return;
+        }
+        timerService.createIntervalTimer(intervalMillis, intervalMillis, new TimerConfig("hot-symbol-refresher", false));
+        log.info("Hot symbol refresher started: interval={} ms, topN={}, minScore={}", intervalMillis, topN, minScore);
+    }
+
+    @Timeout
+    public void refreshHotSymbols() {
+        if (!running.compareAndSet(false, true)) {
+            skippedTicks.incrementAndGet();
+            return;
+        }
+        try {
+            refresh();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Refresh counters plus the popularity scores.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("intervalMillis", intervalMillis);
+        stats.put("topN", topN);
+        stats.put("minScore", minScore);
+        stats.put("ticks", ticks.get());
+        stats.put("refreshedQuotes", refreshedQuotes.get());
+        stats.put("failedTicks", failedTicks.get());
+        stats.put("skippedTicks", skippedTicks.get());
+        stats.put("popularity", popularity.getStatistics());
+        return stats;
+    }
+
+    private void refresh() {
+        Future<Integer> previous = pendingRefresh;
+        if (previous != null && !previous.isDone()) {
+            skippedTicks.incrementAndGet();
+            return;
+        }
+        ticks.incrementAndGet();
+        popularity.prune();
+
+        List<String> hot = popularity.hottest(topN, minScore);
+        if (hot.isEmpty()) {
+            return;
+        }
+
+        log.debug("Refreshing {} hot symbol(s)", hot.size());
+        try {
+            Future<Integer> refresh = tradingService.refreshQuotes(hot);
+            pendingRefresh = refresh;
+            Integer count = refresh.get(intervalMillis, TimeUnit.MILLISECONDS);
+            refreshedQuotes.addAndGet(count == null ? 0 : count);
+        } catch (TimeoutException e) {
+            failedTicks.incrementAndGet();
+            log.warn("Hot symbol refresh did not finish within {} ms", intervalMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            failedTicks.incrementAndGet();
+            log.warn("Hot symbol refresh failed: {}", e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+        }
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+}
@@ -0,0 +1,157 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.Config;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Observed latency of the Trading web service, per operation.
+ *
+ * Keeps the last {@code trading.ws.latency.window} call durations of every operation
+ * and derives percentiles from them. Once {@code trading.ws.latency.minSamples}
+ * durations were observed, the request timeout of an operation becomes its p99
+ * times {@code trading.ws.timeout.multiplier}, bounded by
+ * {@code trading.ws.timeout.min} and the configured {@code trading.ws.requestTimeout}.
+ * Buy and sell orders are not idempotent and always use the configured timeout.
+ */
+@Singleton
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class LatencyTracker {
+    private static final int DEFAULT_WINDOW = 1_024;
+    private static final int DEFAULT_MIN_SAMPLES = 50;
+    private static final double DEFAULT_TIMEOUT_MULTIPLIER = 3.0;
+    private static final long DEFAULT_MIN_TIMEOUT_MILLIS = 1_000;
+    private static final long SNAPSHOT_MAX_AGE_MILLIS = 1_000;
+
+    @Inject
+    private Config config;
+
+    private final ConcurrentHashMap<String, Samples> operations = new ConcurrentHashMap<>();
+
+    private int window;
+    private int minSamples;
+    private boolean adaptiveTimeouts;
+    private double timeoutMultiplier;
+    private long minTimeoutMillis;
+
+    @PostConstruct
+    public void init() {
+        window = getConfig("trading.ws.latency.window", Integer.class).filter(value -> value > 0).orElse(DEFAULT_WINDOW);
+        minSamples = getConfig("trading.ws.latency.minSamples", Integer.class).filter(value -> value > 0).orElse(DEFAULT_MIN_SAMPLES);
+        adaptiveTimeouts = getConfig("trading.ws.timeout.adaptive", Boolean.class).orElse(true);
+        timeoutMultiplier = getConfig("trading.ws.timeout.multiplier", Double.class).filter(value -> value >= 1).orElse(DEFAULT_TIMEOUT_MULTIPLIER);
+        minTimeoutMillis = getConfig("trading.ws.timeout.min", Long.class).filter(value -> value > 0).orElse(DEFAULT_MIN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Records the duration of one call that reached the exchange (successful or not).
+     */
+    public void record(String operation, long millis) {
+        operations.computeIfAbsent(operation, op -> new Samples(window)).add(Math.max(0, millis));
+    }
+
+    /**
+     * @return the given percentile (0-100) of the operation's recent durations, or
+     *         empty until enough durations were observed
+     */
+    public Optional<Long> percentile(String operation, double percentile) {
+        Samples samples = operations.get(operation);
+        if (samples == null) {
+            return Optional.empty();
+        }
+        long[] sorted = samples.sorted();
+        if (sorted.length < minSamples) {
+            return Optional.empty();
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return Optional.of(sorted[Math.max(0, Math.min(index, sorted.length - 1))]);
+    }
+
+    /**
+     * Request timeout for the operation: derived from its p99, never above {@code ceilingMillis}.
+     */
+    public long requestTimeout(String operation, long ceilingMillis) {
+        if (!adaptiveTimeouts) {
+            return ceilingMillis;
+        }
+        return percentile(operation, 99)
+            .map(p99 -> (long) Math.ceil(p99 * timeoutMultiplier))
+            .map(timeout -> Math.min(ceilingMillis, Math.max(minTimeoutMillis, timeout)))
+            .orElse(ceilingMillis);
+    }
+
+    /**
+     * Sample counts and percentiles per operation.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("adaptiveTimeouts", adaptiveTimeouts);
+        stats.put("timeoutMultiplier", timeoutMultiplier);
+        operations.keySet().stream().sorted().forEach(operation -> {
+            Samples samples = operations.get(operation);
+            long[] sorted = samples.sorted();
+            Map<String, Object> op = new LinkedHashMap<>();
+            op.put("calls", samples.total());
+            op.put("window", sorted.length);
+            op.put("p50Millis", percentile(operation, 50).orElse(null));
+            op.put("p95Millis", percentile(operation, 95).orElse(null));
+            op.put("p99Millis", percentile(operation, 99).orElse(null));
+            op.put("maxMillis", sorted.length == 0 ? null : sorted[sorted.length - 1]);
+            stats.put(operation, op);
+        });
+        return stats;
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+
+    /**
+     * Ring buffer of durations. The sorted copy used for percentiles is rebuilt at
+     * most once per second or after a full window of new samples.
+     */
+    private static final class Samples {
+        private final long[] ring;
+        private long total;
+        private long[] sorted = new long[0];
+        private long sortedAt;
+        private long sortedTotal;
+
+        private Samples(int size) {
+            ring = new long[size];
+        }
+
+        private synchronized void add(long millis) {
+            ring[(int) (total % ring.length)] = millis;
+            total++;
+        }
+
+        private synchronized long total() {
+            return total;
+        }
+
+        private synchronized long[] sorted() {
+            long now = System.currentTimeMillis();
+            boolean outdated = total != sortedTotal
+                && (now - sortedAt > SNAPSHOT_MAX_AGE_MILLIS || total - sortedTotal >= ring.length || sorted.length == 0);
+            if (outdated) {
+                sorted = Arrays.copyOf(ring, (int) Math.min(total, ring.length));
+                Arrays.sort(sorted);
+                sortedAt = now;
+                sortedTotal = total;
+            }
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates customer orders per symbol into one exchange order.
+ *
+ * The first order for a symbol opens a batch and, as its leader, waits
+ * {@code trading.orders.aggregation.windowMillis} ms for further orders of the same
+ * symbol. It then nets buys against sells and places a single exchange order for
+ * the net quantity; if buys and sells cancel out, no exchange order is needed and
+ * the current quote is used. Every order of the batch is filled at the same price
+ * per share. Each caller books its own order in its own transaction afterwards.
+ * The other orders of a batch wait for the leader's outcome without a deadline of
+ * their own: their shares are part of the net order, so giving up before it
+ * completes would leave them traded but unaccounted for.
+ *
+ * Disabled unless {@code trading.orders.aggregation.enabled} is true.
+ */
+@Singleton
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class OrderAggregator {
+    private static final Logger log = LoggerFactory.getLogger(OrderAggregator.class);
+
+    private static final long DEFAULT_WINDOW_MILLIS = 50;
+
+    @Inject
+    private Config config;
+
+    // guarded by itself
+    private final Map<String, Batch> openBatches = new HashMap<>();
+
+    private final AtomicLong orders = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong exchangeOrders = new AtomicLong();
+    private final AtomicLong crossedShares = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    private boolean enabled;
+    private long windowMillis;
+
+    public OrderAggregator() {
+    }
+
+    /**
+     * Enabled aggregator with the given batch window, for use outside the container
+     */
+    OrderAggregator(long windowMillis) {
+        this.enabled = true;
+        this.windowMillis = windowMillis;
+    }
+
+    @PostConstruct
+    public void init() {
+        enabled = getConfig("trading.orders.aggregation.enabled", Boolean.class).orElse(false);
+        windowMillis = getConfig("trading.orders.aggregation.windowMillis", Long.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_WINDOW_MILLIS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds an order to the symbol's current batch and waits for the batch to be filled.
+     * @param signedQuantity shares to buy (positive) or sell (negative)
+     * @param netOrder places the batch's net order; called once per batch, by its leader
+     * @return the price per share of the fill
+     */
+    public BigDecimal execute(String symbol, int signedQuantity, NetOrder netOrder) throws Exception {
+        if (signedQuantity == 0) {
+            throw new IllegalArgumentException("Quantity must not be zero");
+        }
+        orders.incrementAndGet();
+
+        Batch batch;
+        boolean leader = false;
+        synchronized (openBatches) {
+            batch = openBatches.get(symbol);
+            if (batch == null) {
+                batch = new Batch();
+                openBatches.put(symbol, batch);
+                leader = true;
+            }
+            batch.add(signedQuantity);
+        }
+
+        if (leader) {
+            return lead(symbol, batch, netOrder);
+        }
+        return await(symbol, batch);
+    }
+
+    /**
+     * Batch and netting counters.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("windowMillis", windowMillis);
+        synchronized (openBatches) {
+            stats.put("openBatches", openBatches.size());
+        }
+        stats.put("orders", orders.get());
+        stats.put("batches", batches.get());
+        stats.put("exchangeOrders", exchangeOrders.get());
+        stats.put("crossedShares", crossedShares.get());
+        stats.put("failedBatches", failedBatches.get());
+        return stats;
+    }
+
+    private BigDecimal lead(String symbol, Batch batch, NetOrder netOrder) throws Exception {
+        try {
+            Thread.sleep(windowMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (openBatches) {
+            openBatches.remove(symbol, batch);
+        }
+        batches.incrementAndGet();
+
+        int net = batch.bought - batch.sold;
+        crossedShares.addAndGet(Math.min(batch.bought, batch.sold));
+        if (net != 0) {
+            exchangeOrders.incrementAndGet();
+        }
+        log.debug("Order batch for {}: {} order(s), bought {}, sold {}, net {}", symbol, batch.orders, batch.bought, batch.sold, net);
+
+        try {
+            BigDecimal price = netOrder.execute(net);
+            if (price == null) {
+                // The net order may have reached the exchange, so this is no clean reject
+                throw new RuntimeException("Trading service returned no price for " + symbol);
+            }
+            batch.fill.complete(price);
+            return price;
+        } catch (Exception | Error e) {
+            failedBatches.incrementAndGet();
+            batch.fill.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private BigDecimal await(String symbol, Batch batch) throws Exception {
+        try {
+            return batch.fill.get();
+        } catch (InterruptedException e) {
+            // The net order is still in flight: the outcome of this order is unknown
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the order batch of " + symbol + ", outcome unknown", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+
+    /**
+     * Places the net order of a batch.
+     */
+    @FunctionalInterface
+    public interface NetOrder {
+        /**
+         * @param netQuantity shares to buy (positive) or sell (negative); 0 if the
+         *                    batch's orders cancel out and only a price is needed
+         * @return the price per share
+         */
+        BigDecimal execute(int netQuantity) throws Exception;
+    }
+
+    private static final class Batch {
+        private final CompletableFuture<BigDecimal> fill = new CompletableFuture<>();
+        // guarded by openBatches
+        private int orders;
+        private int bought;
+        private int sold;
+
+        private void add(int signedQuantity) {
+            orders++;
+            if (signedQuantity > 0) {
+                bought += signedQuantity;
+            } else {
+                sold -= signedQuantity;
+            }
+        }
+    }
+}
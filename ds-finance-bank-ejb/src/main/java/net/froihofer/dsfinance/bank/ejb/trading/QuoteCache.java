@@ -0,0 +1,289 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import net.froihofer.dsfinance.bank.common.dto.StockDTO;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process LRU cache of stock quotes keyed by symbol.
+ *
+ * A quote is fresh for {@code trading.quotes.cache.ttl} ms after it was fetched.
+ * If its last trade is older than {@code trading.quotes.cache.idleAfter} ms the
+ * market for that stock is idle and the quote stays fresh for
+ * {@code trading.quotes.cache.idleTtl} ms instead. After that it is served as
+ * stale for another {@code trading.quotes.cache.staleWindow} ms while the caller
+ * refreshes it in the background; older entries count as misses but are kept
+ * as last known value for {@link #peek}. Symbols are matched ignoring case, see
+ * {@link #key}.
+ */
+@Singleton
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class QuoteCache {
+    private static final Logger log = LoggerFactory.getLogger(QuoteCache.class);
+
+    private static final long DEFAULT_TTL_MILLIS = 5_000;
+    private static final long DEFAULT_IDLE_AFTER_MILLIS = 15 * 60_000;
+    private static final long DEFAULT_IDLE_TTL_MILLIS = 5 * 60_000;
+    private static final long DEFAULT_STALE_WINDOW_MILLIS = 60_000;
+    private static final int DEFAULT_MAX_ENTRIES = 1_000;
+
+    @Inject
+    private Config config;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong outOfOrderUpdates = new AtomicLong();
+
+    private long ttlMillis;
+    private long idleAfterMillis;
+    private long idleTtlMillis;
+    private long staleWindowMillis;
+    private int maxEntries;
+
+    private Map<String, Entry> entries;
+
+    @PostConstruct
+    public void init() {
+        ttlMillis = getLongConfig("trading.quotes.cache.ttl", DEFAULT_TTL_MILLIS);
+        idleAfterMillis = getLongConfig("trading.quotes.cache.idleAfter", DEFAULT_IDLE_AFTER_MILLIS);
+        idleTtlMillis = getLongConfig("trading.quotes.cache.idleTtl", DEFAULT_IDLE_TTL_MILLIS);
+        staleWindowMillis = getLongConfig("trading.quotes.cache.staleWindow", DEFAULT_STALE_WINDOW_MILLIS);
+        maxEntries = (int) getLongConfig("trading.quotes.cache.maxEntries", DEFAULT_MAX_ENTRIES);
+
+        // access-ordered LinkedHashMap gives LRU eviction
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        log.info("Quote cache configured: ttl={} ms, idleTtl={} ms, staleWindow={} ms, maxEntries={}",
+            ttlMillis, idleTtlMillis, staleWindowMillis, maxEntries);
+    }
+
+    /**
+     * Normalized form of a symbol, trimmed and upper case, under which quotes are
+     * cached: the exchange answers "aapl" with a quote for "AAPL".
+     */
+    public static String key(String symbol) {
+        return symbol.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Looks up the quote for the given symbol.
+     * @return the cached quote, or null if there is none that may still be served
+     */
+    public CachedQuote lookup(String symbol) {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key(symbol));
+        }
+        if (entry != null && now > entry.freshUntil + staleWindowMillis) {
+            // Left in place as the last known value for peek(); LRU eviction bounds the size
+            expirations.incrementAndGet();
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        boolean fresh = now <= entry.freshUntil;
+        (fresh ? hits : staleHits).incrementAndGet();
+        return new CachedQuote(copy(entry.quote), fresh, entry.fetchedAt);
+    }
+
+    /**
+     * Returns the cached quote regardless of its age, without touching the counters.
+     * Meant for degraded operation when the trading service cannot be reached.
+     */
+    public CachedQuote peek(String symbol) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key(symbol));
+        }
+        return entry == null ? null : new CachedQuote(copy(entry.quote), false, entry.fetchedAt);
+    }
+
+    /**
+     * Returns all cached quotes (regardless of age) whose symbol or company name
+     * contains the given term, ignoring case. Used when the trading service is
+     * unavailable.
+     */
+    public List<StockDTO> findMatching(String term) {
+        String needle = term == null ? "" : term.trim().toLowerCase(Locale.ROOT);
+        List<StockDTO> matches = new ArrayList<>();
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                String symbol = entry.quote.getSymbol().toLowerCase(Locale.ROOT);
+                String name = entry.quote.getName() == null ? "" : entry.quote.getName().toLowerCase(Locale.ROOT);
+                if (needle.isEmpty() || symbol.contains(needle) || name.contains(needle)) {
+                    matches.add(copy(entry.quote));
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Marks the symbol as being refreshed.
+     * @return false if a refresh is already running or the symbol is not cached
+     */
+    public boolean beginRefresh(String symbol) {
+        synchronized (entries) {
+            Entry entry = entries.get(key(symbol));
+            if (entry == null || entry.refreshing) {
+                return false;
+            }
+            entry.refreshing = true;
+            return true;
+        }
+    }
+
+    /**
+     * Clears the refresh marker, e.g. after a failed refresh.
+     */
+    public void endRefresh(String symbol) {
+        synchronized (entries) {
+            Entry entry = entries.get(key(symbol));
+            if (entry != null) {
+                entry.refreshing = false;
+            }
+        }
+    }
+
+    /**
+     * Stores a freshly fetched quote.
+     * @param lastTradeTime epoch millis of the quote's last trade, or null if unknown
+     */
+    public void put(StockDTO quote, Long lastTradeTime) {
+        if (quote == null || quote.getSymbol() == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry existing = entries.get(key(quote.getSymbol()));
+            if (existing != null && existing.lastTradeTime != null && lastTradeTime != null
+                    && lastTradeTime < existing.lastTradeTime) {
+                // A response that overtook a newer one must not roll the price back
+                outOfOrderUpdates.incrementAndGet();
+                existing.fetchedAt = now;
+                existing.freshUntil = now + effectiveTtl(existing.lastTradeTime, now);
+                existing.refreshing = false;
+                return;
+            }
+
+            Entry entry = new Entry(copy(quote), lastTradeTime, now, now + effectiveTtl(lastTradeTime, now));
+            entries.put(key(quote.getSymbol()), entry);
+        }
+    }
+
+    /**
+     * Hit/miss/eviction counters.
+     */
+    public Map<String, Object> getStatistics() {
+        long served = hits.get() + staleHits.get();
+        long lookups = served + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (entries) {
+            stats.put("size", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hits.get());
+        stats.put("staleHits", staleHits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", lookups == 0 ? 0.0 : (double) served / lookups);
+        stats.put("evictions", evictions.get());
+        stats.put("expirations", expirations.get());
+        stats.put("outOfOrderUpdates", outOfOrderUpdates.get());
+        return stats;
+    }
+
+    private long effectiveTtl(Long lastTradeTime, long now) {
+        if (lastTradeTime != null && now - lastTradeTime > idleAfterMillis) {
+            return Math.max(ttlMillis, idleTtlMillis);
+        }
+        return ttlMillis;
+    }
+
+    private long getLongConfig(String key, long defaultValue) {
+        return (config == null ? Optional.<Long>empty() : config.getOptionalValue(key, Long.class))
+            .filter(value -> value > 0)
+            .orElse(defaultValue);
+    }
+
+    private static StockDTO copy(StockDTO source) {
+        StockDTO dto = new StockDTO(source.getSymbol(), source.getName(), source.getCurrentPrice());
+        dto.setCurrency(source.getCurrency());
+        return dto;
+    }
+
+    private static final class Entry {
+        private final StockDTO quote;
+        private final Long lastTradeTime;
+        private long fetchedAt;
+        private long freshUntil;
+        private boolean refreshing;
+
+        private Entry(StockDTO quote, Long lastTradeTime, long fetchedAt, long freshUntil) {
+            this.quote = quote;
+            this.lastTradeTime = lastTradeTime;
+            this.fetchedAt = fetchedAt;
+            this.freshUntil = freshUntil;
+        }
+    }
+
+    /**
+     * A quote served from the cache.
+     */
+    public static final class CachedQuote {
+        private final StockDTO quote;
+        private final boolean fresh;
+        private final long fetchedAt;
+
+        private CachedQuote(StockDTO quote, boolean fresh, long fetchedAt) {
+            this.quote = quote;
+            this.fresh = fresh;
+            this.fetchedAt = fetchedAt;
+        }
+
+        public StockDTO getQuote() {
+            return quote;
+        }
+
+        public boolean isFresh() {
+            return fresh;
+        }
+
+        public long getFetchedAt() {
+            return fetchedAt;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import net.froihofer.dsfinance.bank.common.dto.StockHistoryPointDTO;
+import org.eclipse.microprofile.config.Config;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory time series of stock prices, one per symbol (keyed by {@link QuoteCache#key}).
+ *
+ * Each series is stored column-wise in two primitive arrays: epoch-millis
+ * timestamps and prices as fixed-point longs with {@value #PRICE_SCALE}
+ * decimal places. A series is loaded once from the trading service and then
+ * kept current by appending newer quotes seen afterwards, at most one per
+ * {@code trading.history.resolution} ms. Range queries
+ * use binary search; large ranges are downsampled with Largest-Triangle-Three-Buckets
+ * so that peaks and dips survive the reduction.
+ *
+ * At most {@code trading.history.maxSymbols} series are kept (least recently used
+ * are evicted), each with at most {@code trading.history.maxPoints} points (the
+ * oldest quarter is dropped when a series is full).
+ */
+@Singleton
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class QuoteHistoryStore {
+    static final int PRICE_SCALE = 4;
+    private static final int INITIAL_CAPACITY = 256;
+
+    @Inject
+    private Config config;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong appends = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private int maxSymbols;
+    private int maxPoints;
+    private long resolutionMillis;
+    private Map<String, Series> series;
+
+    @PostConstruct
+    public void init() {
+        maxSymbols = (config == null ? Optional.<Integer>empty() : config.getOptionalValue("trading.history.maxSymbols", Integer.class))
+            .filter(value -> value > 0)
+            .orElse(500);
+        maxPoints = (config == null ? Optional.<Integer>empty() : config.getOptionalValue("trading.history.maxPoints", Integer.class))
+            .filter(value -> value >= 4)
+            .orElse(10_000);
+        resolutionMillis = (config == null ? Optional.<Long>empty() : config.getOptionalValue("trading.history.resolution", Long.class))
+            .filter(value -> value >= 0)
+            .orElse(60_000L);
+
+        // access-ordered LinkedHashMap gives LRU eviction
+        series = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Series> eldest) {
+                if (size() > maxSymbols) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return true if the history of the symbol has been loaded
+     */
+    public boolean contains(String symbol) {
+        synchronized (series) {
+            return series.containsKey(symbol);
+        }
+    }
+
+    /**
+     * Replaces the history of a symbol. Points need not be sorted; points with
+     * equal timestamps keep the last price.
+     */
+    public void load(String symbol, long[] timestamps, BigDecimal[] prices) {
+        if (timestamps.length != prices.length) {
+            throw new IllegalArgumentException("Timestamps and prices must have the same length");
+        }
+
+        Integer[] order = new Integer[timestamps.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+
+        Series loaded = new Series(Math.min(maxPoints, Math.max(INITIAL_CAPACITY, timestamps.length)), maxPoints);
+        for (int i : order) {
+            if (prices[i] != null) {
+                loaded.append(timestamps[i], toFixed(prices[i]), 0);
+            }
+        }
+
+        synchronized (series) {
+            Series existing = series.get(symbol);
+            if (existing != null) {
+                // keep quotes appended while the history was being downloaded
+                existing.copyNewerInto(loaded);
+            }
+            series.put(symbol, loaded);
+        }
+        loads.incrementAndGet();
+    }
+
+    /**
+     * Appends a quote to an already loaded series. Quotes of symbols without
+     * loaded history and quotes less than the resolution newer than the last
+     * point are ignored.
+     */
+    public void append(String symbol, long timestamp, BigDecimal price) {
+        if (symbol == null || price == null) {
+            return;
+        }
+        Series target;
+        synchronized (series) {
+            target = series.get(symbol);
+        }
+        if (target != null && target.append(timestamp, toFixed(price), resolutionMillis)) {
+            appends.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the points within {@code [from, to]}, downsampled to at most
+     * {@code maxPoints} points.
+     * @return the points, or null if the history of the symbol is not loaded
+     */
+    public Range query(String symbol, long from, long to, int maxPoints) {
+        queries.incrementAndGet();
+        Series source;
+        synchronized (series) {
+            source = series.get(symbol);
+        }
+        return source == null ? null : source.query(from, to, maxPoints);
+    }
+
+    /**
+     * Series count, point count and usage counters.
+     */
+    public Map<String, Object> getStatistics() {
+        List<Series> snapshot;
+        synchronized (series) {
+            snapshot = new ArrayList<>(series.values());
+        }
+        long points = 0;
+        for (Series s : snapshot) {
+            points += s.size();
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("symbols", snapshot.size());
+        stats.put("maxSymbols", maxSymbols);
+        stats.put("maxPoints", maxPoints);
+        stats.put("points", points);
+        stats.put("queries", queries.get());
+        stats.put("loads", loads.get());
+        stats.put("appends", appends.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private static long toFixed(BigDecimal price) {
+        return price.setScale(PRICE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+
+    private static BigDecimal fromFixed(long price) {
+        return BigDecimal.valueOf(price, PRICE_SCALE);
+    }
+
+    /**
+     * Result of a range query.
+     */
+    public static final class Range {
+        private final int totalPoints;
+        private final List<StockHistoryPointDTO> points;
+
+        private Range(int totalPoints, List<StockHistoryPointDTO> points) {
+            this.totalPoints = totalPoints;
+            this.points = points;
+        }
+
+        /**
+         * Number of points in the range before downsampling.
+         */
+        public int getTotalPoints() {
+            return totalPoints;
+        }
+
+        public List<StockHistoryPointDTO> getPoints() {
+            return points;
+        }
+    }
+
+    /**
+     * One symbol's history, sorted by timestamp. Arrays grow by doubling up to
+     * {@code maxPoints}; a full series drops its oldest quarter.
+     */
+    private static final class Series {
+        private final int maxPoints;
+        private long[] timestamps;
+        private long[] prices;
+        private int size;
+
+        private Series(int capacity, int maxPoints) {
+            this.maxPoints = maxPoints;
+            timestamps = new long[capacity];
+            prices = new long[capacity];
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        /**
+         * @param resolution minimum distance in ms to the last point
+         */
+        private synchronized boolean append(long timestamp, long price, long resolution) {
+            if (size > 0) {
+                if (timestamp < timestamps[size - 1]) {
+                    return false;
+                }
+                if (timestamp == timestamps[size - 1]) {
+                    prices[size - 1] = price;
+                    return false;
+                }
+                if (timestamp - timestamps[size - 1] < resolution) {
+                    return false;
+                }
+            }
+            if (size == maxPoints) {
+                int dropped = maxPoints / 4;
+                System.arraycopy(timestamps, dropped, timestamps, 0, size - dropped);
+                System.arraycopy(prices, dropped, prices, 0, size - dropped);
+                size -= dropped;
+            } else if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, Math.min(size * 2, maxPoints));
+                prices = Arrays.copyOf(prices, Math.min(size * 2, maxPoints));
+            }
+            timestamps[size] = timestamp;
+            prices[size] = price;
+            size++;
+            return true;
+        }
+
+        private synchronized void copyNewerInto(Series target) {
+            for (int i = 0; i < size; i++) {
+                target.append(timestamps[i], prices[i], 0);
+            }
+        }
+
+        private synchronized Range query(long from, long to, int maxPoints) {
+            int start = lowerBound(from);
+            int end = lowerBound(to == Long.MAX_VALUE ? to : to + 1);
+            int count = Math.max(0, end - start);
+
+            List<StockHistoryPointDTO> points = new ArrayList<>(Math.min(count, Math.max(maxPoints, 0)));
+            if (count <= maxPoints) {
+                for (int i = start; i < end; i++) {
+                    points.add(point(i));
+                }
+            } else if (maxPoints < 3) {
+                if (maxPoints >= 1) {
+                    points.add(point(start));
+                }
+                if (maxPoints == 2) {
+                    points.add(point(end - 1));
+                }
+            } else {
+                downsample(start, end, maxPoints, points);
+            }
+            return new Range(count, points);
+        }
+
+        /**
+         * Largest-Triangle-Three-Buckets: keeps the first and last point and from
+         * every bucket in between the point forming the largest triangle with the
+         * previously selected point and the average of the next bucket.
+         */
+        private void downsample(int start, int end, int threshold, List<StockHistoryPointDTO> out) {
+            int count = end - start;
+            double bucketSize = (double) (count - 2) / (threshold - 2);
+
+            int selected = start;
+            out.add(point(selected));
+
+            for (int bucket = 0; bucket < threshold - 2; bucket++) {
+                int nextStart = start + (int) Math.floor((bucket + 1) * bucketSize) + 1;
+                int nextEnd = Math.min(start + (int) Math.floor((bucket + 2) * bucketSize) + 1, end);
+                double avgX = 0;
+                double avgY = 0;
+                for (int i = nextStart; i < nextEnd; i++) {
+                    avgX += timestamps[i];
+                    avgY += prices[i];
+                }
+                int nextCount = Math.max(1, nextEnd - nextStart);
+                avgX /= nextCount;
+                avgY /= nextCount;
+
+                int rangeStart = start + (int) Math.floor(bucket * bucketSize) + 1;
+                int rangeEnd = start + (int) Math.floor((bucket + 1) * bucketSize) + 1;
+                double selectedX = timestamps[selected];
+                double selectedY = prices[selected];
+
+                double maxArea = -1;
+                int maxIndex = rangeStart;
+                for (int i = rangeStart; i < rangeEnd; i++) {
+                    double area = Math.abs((selectedX - avgX) * (prices[i] - selectedY)
+                        - (selectedX - timestamps[i]) * (avgY - selectedY));
+                    if (area > maxArea) {
+                        maxArea = area;
+                        maxIndex = i;
+                    }
+                }
+
+                selected = maxIndex;
+                out.add(point(selected));
+            }
+
+            out.add(point(end - 1));
+        }
+
+        private int lowerBound(long timestamp) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (timestamps[mid] < timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private StockHistoryPointDTO point(int index) {
+            return new StockHistoryPointDTO(timestamps[index], fromFixed(prices[index]));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Single-flight coalescing of identical trading service calls.
+ * The first caller for a key (the leader) performs the call; concurrent callers
+ * for the same key wait for the leader's outcome and receive the same result or
+ * the same exception. Followers wait at most the given deadline, so a slow
+ * leader cannot hold them forever.
+ */
+@Singleton
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class RequestCoalescer {
+    private static final Logger log = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong leaderCalls = new AtomicLong();
+    private final AtomicLong coalescedCalls = new AtomicLong();
+    private final AtomicLong deadlineExceeded = new AtomicLong();
+
+    /**
+     * Executes the loader unless a call for the same key is already in flight,
+     * in which case its outcome is awaited for at most {@code deadlineMillis}.
+     */
+    public <T> T execute(String key, long deadlineMillis, Callable<T> loader) throws Exception {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+
+        if (existing != null) {
+            coalescedCalls.incrementAndGet();
+            return await(key, existing, deadlineMillis);
+        }
+
+        leaderCalls.incrementAndGet();
+        try {
+            T result = loader.call();
+            mine.complete(result);
+            return result;
+        } catch (Exception | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Multi-key variant for batch lookups. Ids already in flight are awaited, all
+     * other ids are loaded together with a single loader call and published to
+     * concurrent callers individually. Ids the loader does not return map to no entry.
+     */
+    public <T> Map<String, T> executeAll(String prefix, Collection<String> ids, long deadlineMillis,
+                                         Function<List<String>, Map<String, T>> loader) throws Exception {
+        Map<String, CompletableFuture<Object>> owned = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Object>> followed = new LinkedHashMap<>();
+
+        for (String id : ids) {
+            CompletableFuture<Object> mine = new CompletableFuture<>();
+            CompletableFuture<Object> existing = inFlight.putIfAbsent(prefix + id, mine);
+            if (existing == null) {
+                owned.put(id, mine);
+            } else {
+                followed.put(id, existing);
+            }
+        }
+
+        Map<String, T> results = new LinkedHashMap<>();
+
+        if (!owned.isEmpty()) {
+            leaderCalls.incrementAndGet();
+            try {
+                Map<String, T> loaded = loader.apply(new ArrayList<>(owned.keySet()));
+                Map<String, T> safeLoaded = loaded == null ? Collections.emptyMap() : loaded;
+                owned.forEach((id, future) -> {
+                    T value = safeLoaded.get(id);
+                    future.complete(value);
+                    if (value != null) {
+                        results.put(id, value);
+                    }
+                });
+            } catch (RuntimeException | Error e) {
+                owned.values().forEach(future -> future.completeExceptionally(e));
+                throw e;
+            } finally {
+                owned.forEach((id, future) -> inFlight.remove(prefix + id, future));
+            }
+        }
+
+        if (!followed.isEmpty()) {
+            coalescedCalls.addAndGet(followed.size());
+            long deadline = System.currentTimeMillis() + deadlineMillis;
+            for (Map.Entry<String, CompletableFuture<Object>> entry : followed.entrySet()) {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                T value = await(prefix + entry.getKey(), entry.getValue(), remaining);
+                if (value != null) {
+                    results.put(entry.getKey(), value);
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Leader/follower counters.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", inFlight.size());
+        stats.put("leaderCalls", leaderCalls.get());
+        stats.put("coalescedCalls", coalescedCalls.get());
+        stats.put("deadlineExceeded", deadlineExceeded.get());
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T await(String key, CompletableFuture<Object> future, long deadlineMillis) throws Exception {
+        try {
+            return (T) future.get(deadlineMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            deadlineExceeded.incrementAndGet();
+            log.warn("Gave up waiting for in-flight trading call '{}' after {} ms", key, deadlineMillis);
+            throw new IllegalStateException("Trading service call '" + key + "' did not complete within " + deadlineMillis + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for trading service call '" + key + "'", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import net.froihofer.dsfinance.bank.ejb.service.TradingService;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Keeps the quotes of the {@link StockSearchIndex} current. Every five minutes
+ * the oldest indexed symbols older than {@code trading.search.index.refreshAge} ms
+ * are re-fetched, at most {@code trading.ws.batchSize} of them, i.e. one call per
+ * pass; a large index is cycled through over consecutive passes instead of being
+ * re-quoted in full every time.
+ */
+@Singleton
+@PermitAll
+public class SearchIndexRefresher {
+    private static final Logger log = LoggerFactory.getLogger(SearchIndexRefresher.class);
+
+    private static final long DEFAULT_REFRESH_AGE_MILLIS = 5 * 60_000;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    @EJB
+    private StockSearchIndex searchIndex;
+
+    @EJB
+    private TradingService tradingService;
+
+    @Inject
+    private Config config;
+
+    @Schedule(hour = "*", minute = "*/5", persistent = false)
+    public void refreshIndex() {
+        long refreshAge = config == null ? DEFAULT_REFRESH_AGE_MILLIS
+            : config.getOptionalValue("trading.search.index.refreshAge", Long.class)
+                .filter(value -> value > 0)
+                .orElse(DEFAULT_REFRESH_AGE_MILLIS);
+        int batchSize = config == null ? DEFAULT_BATCH_SIZE
+            : config.getOptionalValue("trading.ws.batchSize", Integer.class)
+                .filter(value -> value > 0)
+                .orElse(DEFAULT_BATCH_SIZE);
+
+        List<String> symbols = searchIndex.symbolsOlderThan(refreshAge, batchSize);
+        if (symbols.isEmpty()) {
+            return;
+        }
+
+        log.debug("Refreshing {} indexed stock quote(s)", symbols.size());
+        tradingService.refreshQuotes(symbols);
+    }
+}
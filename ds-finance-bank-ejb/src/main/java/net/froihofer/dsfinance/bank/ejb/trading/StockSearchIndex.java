@@ -0,0 +1,348 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import net.froihofer.dsfinance.bank.common.dto.StockDTO;
+import org.eclipse.microprofile.config.Config;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Local search index over the symbols and company names of all stocks the
+ * trading service has returned so far.
+ *
+ * A prefix trie over the symbol, the full company name and every word of it
+ * answers prefix queries; a trigram index answers infix queries of three or
+ * more characters. Results are ranked exact symbol &gt; prefix &gt; infix.
+ */
+@Singleton
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class StockSearchIndex {
+    private static final int NGRAM = 3;
+
+    private static final int RANK_EXACT_SYMBOL = 0;
+    private static final int RANK_SYMBOL_PREFIX = 1;
+    private static final int RANK_NAME_PREFIX = 2;
+    private static final int RANK_INFIX = 3;
+
+    @Inject
+    private Config config;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, IndexedStock> stocks = new HashMap<>();
+    private final TrieNode trie = new TrieNode();
+    private final Map<String, Set<String>> ngrams = new HashMap<>();
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong localHits = new AtomicLong();
+    private final AtomicLong rejectedEntries = new AtomicLong();
+
+    private int maxEntries;
+
+    @PostConstruct
+    public void init() {
+        maxEntries = (config == null ? Optional.<Integer>empty() : config.getOptionalValue("trading.search.index.maxEntries", Integer.class))
+            .filter(value -> value > 0)
+            .orElse(10_000);
+    }
+
+    /**
+     * Adds or updates a stock. Keys are only indexed the first time a symbol is seen
+     * (or when its company name changes); later calls just update the quote.
+     */
+    public void index(StockDTO quote) {
+        if (quote == null || quote.getSymbol() == null || quote.getSymbol().isBlank()) {
+            return;
+        }
+
+        String symbol = QuoteCache.key(quote.getSymbol());
+        String name = quote.getName() == null ? quote.getSymbol().trim() : quote.getName().trim();
+        StockDTO snapshot = copy(quote);
+        long now = System.currentTimeMillis();
+
+        lock.writeLock().lock();
+        try {
+            IndexedStock existing = stocks.get(symbol);
+            if (existing != null && existing.name.equals(name)) {
+                existing.quote = snapshot;
+                existing.updatedAt = now;
+                return;
+            }
+            if (existing == null && stocks.size() >= maxEntries) {
+                rejectedEntries.incrementAndGet();
+                return;
+            }
+            if (existing != null) {
+                unindex(existing);
+            }
+
+            IndexedStock stock = new IndexedStock(symbol, name, snapshot, now);
+            stocks.put(symbol, stock);
+            for (String key : stock.prefixKeys()) {
+                trie.insert(key, symbol);
+            }
+            for (String gram : ngramsOf(stock.lowerSymbol + " " + stock.lowerName)) {
+                ngrams.computeIfAbsent(gram, g -> new HashSet<>()).add(symbol);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Searches symbols and company names for the given term.
+     * @return ranked copies of the indexed quotes, at most {@code limit}
+     */
+    public List<StockDTO> search(String term, int limit) {
+        queries.incrementAndGet();
+        String needle = term == null ? "" : term.trim().toLowerCase(Locale.ROOT);
+        if (needle.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<String, Integer> ranks = new HashMap<>();
+        List<IndexedStock> matches = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            for (String symbol : trie.find(needle)) {
+                IndexedStock stock = stocks.get(symbol);
+                ranks.put(symbol, stock.lowerSymbol.equals(needle) ? RANK_EXACT_SYMBOL
+                    : stock.lowerSymbol.startsWith(needle) ? RANK_SYMBOL_PREFIX : RANK_NAME_PREFIX);
+                matches.add(stock);
+            }
+
+            if (needle.length() >= NGRAM) {
+                for (String symbol : infixCandidates(needle)) {
+                    IndexedStock stock = stocks.get(symbol);
+                    if (!ranks.containsKey(symbol)
+                            && (stock.lowerSymbol.contains(needle) || stock.lowerName.contains(needle))) {
+                        ranks.put(symbol, RANK_INFIX);
+                        matches.add(stock);
+                    }
+                }
+            }
+
+            matches.sort(Comparator.<IndexedStock>comparingInt(stock -> ranks.get(stock.symbol))
+                .thenComparing(stock -> stock.symbol));
+
+            List<StockDTO> results = new ArrayList<>(Math.min(limit, matches.size()));
+            for (IndexedStock stock : matches) {
+                if (results.size() >= limit) {
+                    break;
+                }
+                results.add(copy(stock.quote));
+            }
+            if (!results.isEmpty()) {
+                localHits.incrementAndGet();
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a copy of the indexed quote of the symbol, or null if it is not indexed
+     */
+    public StockDTO lookup(String symbol) {
+        if (symbol == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            IndexedStock stock = stocks.get(QuoteCache.key(symbol));
+            return stock == null ? null : copy(stock.quote);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * At most {@code limit} symbols whose indexed quote is older than the given age,
+     * oldest first.
+     */
+    public List<String> symbolsOlderThan(long maxAgeMillis, int limit) {
+        long threshold = System.currentTimeMillis() - maxAgeMillis;
+        List<IndexedStock> old = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (IndexedStock stock : stocks.values()) {
+                if (stock.updatedAt < threshold) {
+                    old.add(stock);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        old.sort(Comparator.comparingLong(stock -> stock.updatedAt));
+        List<String> symbols = new ArrayList<>(Math.min(limit, old.size()));
+        for (int i = 0; i < old.size() && i < limit; i++) {
+            symbols.add(old.get(i).symbol);
+        }
+        return symbols;
+    }
+
+    /**
+     * Index size and query counters.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("stocks", stocks.size());
+            stats.put("ngrams", ngrams.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("queries", queries.get());
+        stats.put("localHits", localHits.get());
+        stats.put("rejectedEntries", rejectedEntries.get());
+        return stats;
+    }
+
+    /**
+     * Removes the trie and trigram keys of a stock whose company name changed
+     */
+    private void unindex(IndexedStock stock) {
+        for (String key : stock.prefixKeys()) {
+            trie.remove(key, stock.symbol);
+        }
+        for (String gram : ngramsOf(stock.lowerSymbol + " " + stock.lowerName)) {
+            Set<String> symbols = ngrams.get(gram);
+            if (symbols != null && symbols.remove(stock.symbol) && symbols.isEmpty()) {
+                ngrams.remove(gram);
+            }
+        }
+    }
+
+    private Set<String> infixCandidates(String needle) {
+        Set<String> candidates = null;
+        for (String gram : ngramsOf(needle)) {
+            Set<String> symbols = ngrams.get(gram);
+            if (symbols == null) {
+                return Set.of();
+            }
+            if (candidates == null) {
+                candidates = new HashSet<>(symbols);
+            } else {
+                candidates.retainAll(symbols);
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+        return candidates == null ? Set.of() : candidates;
+    }
+
+    private static Set<String> ngramsOf(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + NGRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + NGRAM));
+        }
+        return grams;
+    }
+
+    private static StockDTO copy(StockDTO source) {
+        StockDTO dto = new StockDTO(source.getSymbol(), source.getName(), source.getCurrentPrice());
+        dto.setCurrency(source.getCurrency());
+        return dto;
+    }
+
+    private static final class IndexedStock {
+        private final String symbol;
+        private final String name;
+        private final String lowerSymbol;
+        private final String lowerName;
+        private StockDTO quote;
+        private long updatedAt;
+
+        private IndexedStock(String symbol, String name, StockDTO quote, long updatedAt) {
+            this.symbol = symbol;
+            this.name = name;
+            this.lowerSymbol = symbol.toLowerCase(Locale.ROOT);
+            this.lowerName = name.toLowerCase(Locale.ROOT);
+            this.quote = quote;
+            this.updatedAt = updatedAt;
+        }
+
+        private Set<String> prefixKeys() {
+            Set<String> keys = new HashSet<>();
+            keys.add(lowerSymbol);
+            keys.add(lowerName);
+            for (String word : lowerName.split("[^\\p{L}\\p{N}]+")) {
+                if (!word.isEmpty()) {
+                    keys.add(word);
+                }
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Trie node; every node knows the symbols of all keys below it, so a prefix
+     * lookup is a walk down the query characters.
+     */
+    private static final class TrieNode {
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        private final Set<String> symbols = new HashSet<>();
+
+        private void insert(String key, String symbol) {
+            TrieNode node = this;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), c -> new TrieNode());
+                node.symbols.add(symbol);
+            }
+        }
+
+        /**
+         * Removes the symbol along the key's path and prunes nodes left without symbols.
+         * Only correct when all keys of the symbol are removed, as the nodes do not
+         * count how many of its keys pass through them.
+         */
+        private void remove(String key, String symbol) {
+            List<TrieNode> path = new ArrayList<>(key.length() + 1);
+            TrieNode node = this;
+            path.add(node);
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.get(key.charAt(i));
+                if (node == null) {
+                    break;
+                }
+                node.symbols.remove(symbol);
+                path.add(node);
+            }
+            for (int i = path.size() - 1; i > 0; i--) {
+                if (path.get(i).symbols.isEmpty()) {
+                    path.get(i - 1).children.remove(key.charAt(i - 1));
+                }
+            }
+        }
+
+        private Set<String> find(String prefix) {
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.children.get(prefix.charAt(i));
+            }
+            return node == null ? Set.of() : node.symbols;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import net.froihofer.dsfinance.ws.trading.api.PublicStockQuote;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.stax.StAXSource;
+import java.math.BigDecimal;
+import java.util.function.Consumer;
+
+/**
+ * StAX parser for the payload of the Trading web service's quote list responses
+ * ({@code getStockQuotesResponse}, {@code findStockQuotesByCompanyNameResponse},
+ * {@code getStockQuoteHistoryResponse}).
+ *
+ * Each {@code <return>} element is handed to the sink as soon as it has been read,
+ * so only one quote is held in memory at a time, however large the response.
+ * Not thread-safe; create one parser per response.
+ */
+public class StreamingQuoteParser {
+    private static final String RETURN_ELEMENT = "return";
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final DatatypeFactory datatypeFactory;
+
+    public StreamingQuoteParser() {
+        try {
+            datatypeFactory = DatatypeFactory.newInstance();
+        } catch (DatatypeConfigurationException e) {
+            throw new IllegalStateException("Unable to create XML datatype factory", e);
+        }
+    }
+
+    /**
+     * Parses the response payload and passes every quote to the sink.
+     * @return the number of quotes read
+     */
+    public int parse(Source payload, Consumer<PublicStockQuote> sink) throws XMLStreamException {
+        XMLStreamReader reader = payload instanceof StAXSource && ((StAXSource) payload).getXMLStreamReader() != null
+            ? ((StAXSource) payload).getXMLStreamReader()
+            : INPUT_FACTORY.createXMLStreamReader(payload);
+        try {
+            return parse(reader, sink);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads quotes from the current position of the reader to the end of the document.
+     * @return the number of quotes read
+     */
+    public int parse(XMLStreamReader reader, Consumer<PublicStockQuote> sink) throws XMLStreamException {
+        int count = 0;
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT && RETURN_ELEMENT.equals(reader.getLocalName())) {
+                sink.accept(readQuote(reader));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private PublicStockQuote readQuote(XMLStreamReader reader) throws XMLStreamException {
+        PublicStockQuote quote = new PublicStockQuote();
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT && RETURN_ELEMENT.equals(reader.getLocalName())) {
+                break;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+
+            String element = reader.getLocalName();
+            String text = reader.getElementText().trim();
+            if (text.isEmpty()) {
+                continue;
+            }
+            switch (element) {
+                case "symbol":
+                    quote.setSymbol(text);
+                    break;
+                case "companyName":
+                    quote.setCompanyName(text);
+                    break;
+                case "lastTradePrice":
+                    quote.setLastTradePrice(new BigDecimal(text));
+                    break;
+                case "lastTradeTime":
+                    quote.setLastTradeTime(datatypeFactory.newXMLGregorianCalendar(text));
+                    break;
+                case "marketCapitalization":
+                    quote.setMarketCapitalization(Long.valueOf(text));
+                    break;
+                case "stockExchange":
+                    quote.setStockExchange(text);
+                    break;
+                default:
+                    // unknown elements of newer service versions are ignored
+                    break;
+            }
+        }
+        return quote;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
@@ -0,0 +1,166 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.Config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exponentially decayed request counters per stock symbol.
+ *
+ * Every request adds its weight to the symbol's score; the score halves every
+ * {@code trading.hot.halfLife} ms without requests. Scores that have decayed
+ * below {@value #PRUNE_SCORE} are dropped, and at most
+ * {@code trading.hot.maxTracked} symbols are tracked (the coldest go first).
+ */
+@Singleton
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class SymbolPopularity {
+    private static final double PRUNE_SCORE = 0.01;
+    private static final long DEFAULT_HALF_LIFE_MILLIS = 5 * 60_000;
+    private static final int DEFAULT_MAX_TRACKED = 10_000;
+
+    @Inject
+    private Config config;
+
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong pruned = new AtomicLong();
+
+    private long halfLifeMillis;
+    private int maxTracked;
+
+    @PostConstruct
+    public void init() {
+        halfLifeMillis = getConfig("trading.hot.halfLife", Long.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_HALF_LIFE_MILLIS);
+        maxTracked = getConfig("trading.hot.maxTracked", Integer.class)
+            .filter(value -> value > 0)
+            .orElse(DEFAULT_MAX_TRACKED);
+    }
+
+    /**
+     * Records one request for each of the given symbols, each weighing {@code weight}.
+     */
+    public void record(Collection<String> symbols, double weight) {
+        if (symbols == null || weight <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (String symbol : symbols) {
+            if (symbol != null && !symbol.isBlank()) {
+                counters.computeIfAbsent(symbol.trim(), s -> new Counter()).add(weight, now, halfLifeMillis);
+                recorded.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The symbols with the highest current score, hottest first.
+     * @param minScore symbols scoring below this are left out
+     */
+    public List<String> hottest(int limit, double minScore) {
+        long now = System.currentTimeMillis();
+        List<Map.Entry<String, Double>> scored = new ArrayList<>();
+        counters.forEach((symbol, counter) -> {
+            double score = counter.valueAt(now, halfLifeMillis);
+            if (score >= minScore) {
+                scored.add(Map.entry(symbol, score));
+            }
+        });
+        scored.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+
+        List<String> symbols = new ArrayList<>(Math.min(limit, scored.size()));
+        for (int i = 0; i < scored.size() && i < limit; i++) {
+            symbols.add(scored.get(i).getKey());
+        }
+        return symbols;
+    }
+
+    /**
+     * Drops decayed counters and, if still too many symbols are tracked, the coldest ones.
+     */
+    public void prune() {
+        long now = System.currentTimeMillis();
+        counters.entrySet().removeIf(entry -> {
+            if (entry.getValue().valueAt(now, halfLifeMillis) < PRUNE_SCORE) {
+                pruned.incrementAndGet();
+                return true;
+            }
+            return false;
+        });
+
+        int excess = counters.size() - maxTracked;
+        if (excess > 0) {
+            counters.entrySet().stream()
+                .sorted(Comparator.comparingDouble(entry -> entry.getValue().valueAt(now, halfLifeMillis)))
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .forEach(symbol -> {
+                    counters.remove(symbol);
+                    pruned.incrementAndGet();
+                });
+        }
+    }
+
+    /**
+     * Tracked symbols and the current top scores.
+     */
+    public Map<String, Object> getStatistics() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> top = new LinkedHashMap<>();
+        for (String symbol : hottest(10, PRUNE_SCORE)) {
+            Counter counter = counters.get(symbol);
+            if (counter != null) {
+                top.put(symbol, Math.round(counter.valueAt(now, halfLifeMillis) * 100) / 100.0);
+            }
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tracked", counters.size());
+        stats.put("maxTracked", maxTracked);
+        stats.put("halfLifeMillis", halfLifeMillis);
+        stats.put("recorded", recorded.get());
+        stats.put("pruned", pruned.get());
+        stats.put("top", top);
+        return stats;
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+
+    private static final class Counter {
+        private double score;
+        private long updatedAt;
+
+        private synchronized void add(double weight, long now, long halfLifeMillis) {
+            score = decay(now, halfLifeMillis) + weight;
+            updatedAt = Math.max(updatedAt, now);
+        }
+
+        private synchronized double valueAt(long now, long halfLifeMillis) {
+            return decay(now, halfLifeMillis);
+        }
+
+        private double decay(long now, long halfLifeMillis) {
+            long elapsed = now - updatedAt;
+            return elapsed <= 0 ? score : score * Math.pow(0.5, (double) elapsed / halfLifeMillis);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import net.froihofer.dsfinance.ws.trading.api.PublicStockQuote;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the best {@code limit} quotes of a search, ranked like the
+ * {@link StockSearchIndex}: exact symbol &gt; symbol prefix &gt; name prefix &gt;
+ * any other match, then by symbol. Holds at most {@code limit} quotes no matter
+ * how many are offered, so only the quotes returned need to be cached.
+ * Not thread-safe.
+ */
+public class TopKQuoteCollector implements Consumer<PublicStockQuote> {
+    private final String needle;
+    private final int limit;
+    private final Comparator<Ranked> order = Comparator.<Ranked>comparingInt(ranked -> ranked.rank)
+        .thenComparing(ranked -> ranked.quote.getSymbol());
+    // worst quote at the head so it can be replaced
+    private final PriorityQueue<Ranked> best;
+    private int offered;
+
+    public TopKQuoteCollector(String searchTerm, int limit) {
+        this.needle = searchTerm == null ? "" : searchTerm.trim().toLowerCase(Locale.ROOT);
+        this.limit = Math.max(1, limit);
+        this.best = new PriorityQueue<>(this.limit + 1, order.reversed());
+    }
+
+    @Override
+    public void accept(PublicStockQuote quote) {
+        if (quote == null || quote.getSymbol() == null) {
+            return;
+        }
+        offered++;
+        Ranked ranked = new Ranked(quote, rank(quote));
+        if (best.size() < limit) {
+            best.add(ranked);
+        } else if (order.compare(ranked, best.peek()) < 0) {
+            best.poll();
+            best.add(ranked);
+        }
+    }
+
+    /**
+     * @return the collected quotes, best first
+     */
+    public List<PublicStockQuote> getResults() {
+        List<Ranked> ranked = new ArrayList<>(best);
+        ranked.sort(order);
+        List<PublicStockQuote> results = new ArrayList<>(ranked.size());
+        for (Ranked entry : ranked) {
+            results.add(entry.quote);
+        }
+        return results;
+    }
+
+    /**
+     * Number of quotes offered, including those that did not make the cut.
+     */
+    public int getOffered() {
+        return offered;
+    }
+
+    private int rank(PublicStockQuote quote) {
+        String symbol = quote.getSymbol().toLowerCase(Locale.ROOT);
+        String name = quote.getCompanyName() == null ? "" : quote.getCompanyName().toLowerCase(Locale.ROOT);
+        if (symbol.equals(needle)) {
+            return 0;
+        }
+        if (symbol.startsWith(needle)) {
+            return 1;
+        }
+        if (name.startsWith(needle)) {
+            return 2;
+        }
+        return 3;
+    }
+
+    private static final class Ranked {
+        private final PublicStockQuote quote;
+        private final int rank;
+
+        private Ranked(PublicStockQuote quote, int rank) {
+            this.quote = quote;
+            this.rank = rank;
+        }
+    }
+}
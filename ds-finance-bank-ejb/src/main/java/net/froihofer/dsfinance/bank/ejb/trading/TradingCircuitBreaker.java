@@ -0,0 +1,284 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Circuit breaker and bulkhead around all calls to the Trading web service.
+ *
+ * The breaker keeps the outcomes of the last {@code trading.ws.breaker.windowSize}
+ * calls. Once at least {@code minimumCalls} were recorded and the failure rate
+ * reaches {@code failureRateThreshold} percent it opens and rejects all calls for
+ * {@code openDuration} ms. Afterwards it is half-open and lets
+ * {@code halfOpenCalls} trial calls through: if they all succeed it closes again,
+ * a single failure opens it again. Each call is accounted by the state it was
+ * admitted in, as recorded in its {@link Permit}: a slow call admitted while
+ * closed that completes after the breaker opened is not taken for a trial call.
+ *
+ * The bulkhead caps the number of concurrent outbound calls at
+ * {@code trading.ws.bulkhead.maxConcurrent}; a caller waits at most
+ * {@code trading.ws.bulkhead.maxWait} ms for a free slot.
+ *
+ * Only communication failures count as failures; faults raised by the exchange
+ * (TradingWSException) prove that it is reachable.
+ */
+@Singleton
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class TradingCircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(TradingCircuitBreaker.class);
+
+    /**
+     * Breaker states.
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * How a permitted call ended.
+     */
+    public enum Outcome {
+        SUCCESS,
+        FAILURE,
+        /** The call never reached the exchange, e.g. no port was available. */
+        IGNORED
+    }
+
+    /**
+     * Admission of one call, handed back to {@link #complete(Permit, Outcome)}.
+     */
+    public static final class Permit {
+        private final boolean trial;
+        private final long halfOpenPeriod;
+
+        private Permit(boolean trial, long halfOpenPeriod) {
+            this.trial = trial;
+            this.halfOpenPeriod = halfOpenPeriod;
+        }
+
+        /**
+         * Whether the call is one of the trial calls of a half-open breaker
+         */
+        public boolean isTrial() {
+            return trial;
+        }
+    }
+
+    @Inject
+    private Config config;
+
+    private final AtomicLong breakerRejections = new AtomicLong();
+    private final AtomicLong bulkheadRejections = new AtomicLong();
+    private final AtomicLong openTransitions = new AtomicLong();
+
+    private int windowSize;
+    private int minimumCalls;
+    private int failureRateThreshold;
+    private long openDurationMillis;
+    private int halfOpenCalls;
+    private int maxConcurrent;
+    private long maxWaitMillis;
+
+    private Semaphore bulkhead;
+
+    // guarded by this
+    private boolean[] window;
+    private int windowIndex;
+    private int recordedCalls;
+    private int failedCalls;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermitted;
+    private int halfOpenSucceeded;
+    private long halfOpenPeriod;
+
+    @PostConstruct
+    public void init() {
+        windowSize = getConfig("trading.ws.breaker.windowSize", Integer.class).filter(v -> v > 0).orElse(20);
+        minimumCalls = getConfig("trading.ws.breaker.minimumCalls", Integer.class).filter(v -> v > 0).orElse(10);
+        failureRateThreshold = getConfig("trading.ws.breaker.failureRateThreshold", Integer.class).filter(v -> v > 0 && v <= 100).orElse(50);
+        openDurationMillis = getConfig("trading.ws.breaker.openDuration", Long.class).filter(v -> v > 0).orElse(30_000L);
+        halfOpenCalls = getConfig("trading.ws.breaker.halfOpenCalls", Integer.class).filter(v -> v > 0).orElse(3);
+        maxConcurrent = getConfig("trading.ws.bulkhead.maxConcurrent", Integer.class).filter(v -> v > 0).orElse(16);
+        maxWaitMillis = getConfig("trading.ws.bulkhead.maxWait", Long.class).filter(v -> v >= 0).orElse(100L);
+
+        window = new boolean[windowSize];
+        bulkhead = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Reserves a slot for one outbound call. Every successful acquire must be
+     * followed by exactly one {@link #complete(Permit, Outcome)}.
+     * @return the permit to complete the call with
+     * @throws TradingUnavailableException if the breaker is open or the bulkhead is full
+     */
+    public Permit acquirePermission() {
+        Permit permit = allowCall();
+        if (permit == null) {
+            breakerRejections.incrementAndGet();
+            throw new TradingUnavailableException("Trading service is unavailable (circuit breaker open)");
+        }
+
+        boolean acquired;
+        try {
+            acquired = bulkhead.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+
+        if (!acquired) {
+            bulkheadRejections.incrementAndGet();
+            releaseHalfOpenPermit(permit);
+            throw new TradingUnavailableException("Trading service is busy (" + maxConcurrent + " calls in progress)");
+        }
+        return permit;
+    }
+
+    /**
+     * Records the outcome of a permitted call and frees its bulkhead slot. Trial
+     * calls decide the half-open breaker; other calls only count while it is closed.
+     */
+    public void complete(Permit permit, Outcome outcome) {
+        try {
+            synchronized (this) {
+                if (isCurrentTrial(permit)) {
+                    if (outcome == Outcome.IGNORED) {
+                        halfOpenPermitted--;
+                    } else if (outcome == Outcome.FAILURE) {
+                        open();
+                    } else if (++halfOpenSucceeded >= halfOpenCalls) {
+                        close();
+                    }
+                    return;
+                }
+                // Calls admitted before the breaker opened, or trials of an earlier half-open period
+                if (outcome == Outcome.IGNORED || permit.trial || state != State.CLOSED) {
+                    return;
+                }
+                record(outcome == Outcome.FAILURE);
+                if (recordedCalls >= minimumCalls
+                        && failedCalls * 100 >= failureRateThreshold * recordedCalls) {
+                    open();
+                }
+            }
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    public synchronized State getState() {
+        refreshState();
+        return state;
+    }
+
+    /**
+     * Breaker state and rejection counters.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            refreshState();
+            stats.put("state", state.name());
+            stats.put("windowCalls", recordedCalls);
+            stats.put("windowFailures", failedCalls);
+            stats.put("failureRatePercent", recordedCalls == 0 ? 0.0 : failedCalls * 100.0 / recordedCalls);
+        }
+        stats.put("openTransitions", openTransitions.get());
+        stats.put("breakerRejections", breakerRejections.get());
+        stats.put("bulkheadRejections", bulkheadRejections.get());
+        stats.put("bulkheadMaxConcurrent", maxConcurrent);
+        stats.put("bulkheadAvailable", bulkhead.availablePermits());
+        return stats;
+    }
+
+    /**
+     * @return the permit, or null if the call is rejected
+     */
+    private synchronized Permit allowCall() {
+        refreshState();
+        if (state == State.CLOSED) {
+            return new Permit(false, halfOpenPeriod);
+        }
+        if (state == State.HALF_OPEN && halfOpenPermitted < halfOpenCalls) {
+            halfOpenPermitted++;
+            return new Permit(true, halfOpenPeriod);
+        }
+        return null;
+    }
+
+    private synchronized void releaseHalfOpenPermit(Permit permit) {
+        if (isCurrentTrial(permit)) {
+            halfOpenPermitted--;
+        }
+    }
+
+    /**
+     * Whether the permit is a trial call of the breaker's current half-open period
+     */
+    private boolean isCurrentTrial(Permit permit) {
+        return permit.trial && state == State.HALF_OPEN && permit.halfOpenPeriod == halfOpenPeriod;
+    }
+
+    private void refreshState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMillis) {
+            state = State.HALF_OPEN;
+            halfOpenPeriod++;
+            halfOpenPermitted = 0;
+            halfOpenSucceeded = 0;
+            log.info("Trading service circuit breaker half-open, allowing {} trial call(s)", halfOpenCalls);
+        }
+    }
+
+    private void record(boolean failed) {
+        if (recordedCalls == windowSize) {
+            if (window[windowIndex]) {
+                failedCalls--;
+            }
+        } else {
+            recordedCalls++;
+        }
+        window[windowIndex] = failed;
+        if (failed) {
+            failedCalls++;
+        }
+        windowIndex = (windowIndex + 1) % windowSize;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        openTransitions.incrementAndGet();
+        log.warn("Trading service circuit breaker opened for {} ms ({} of the last {} calls failed)",
+            openDurationMillis, failedCalls, recordedCalls);
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        recordedCalls = 0;
+        failedCalls = 0;
+        windowIndex = 0;
+        log.info("Trading service circuit breaker closed");
+    }
+
+    private <T> Optional<T> getConfig(String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+}
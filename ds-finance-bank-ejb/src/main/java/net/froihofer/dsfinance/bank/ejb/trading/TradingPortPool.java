@@ -0,0 +1,351 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.security.PermitAll;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.inject.Inject;
+import jakarta.xml.ws.BindingProvider;
+import jakarta.xml.ws.Dispatch;
+import jakarta.xml.ws.Service;
+import jakarta.xml.ws.WebServiceException;
+import jakarta.xml.ws.WebServiceRef;
+import net.froihofer.dsfinance.bank.ejb.trading.simulator.SimulatedMarket;
+import net.froihofer.dsfinance.bank.ejb.trading.simulator.SimulatedTradingWebService;
+import net.froihofer.dsfinance.ws.trading.api.TradingWebService;
+import net.froihofer.dsfinance.ws.trading.api.TradingWebServiceService;
+import org.eclipse.microprofile.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.transform.Source;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of pre-configured {@link TradingWebService} ports.
+ * Creating a CXF port is expensive, so ports are created lazily up to
+ * {@code trading.ws.pool.size}, configured once and then checked out per call.
+ * A port is used by one caller at a time, which keeps its request context private.
+ * Each CXF port also carries a lazily created payload-mode {@link Dispatch} for
+ * callers that want to parse responses themselves.
+ *
+ * If {@code trading.ws.endpoint} starts with {@code simulator:} the pool hands
+ * out {@link SimulatedTradingWebService} instances sharing one
+ * {@link SimulatedMarket} instead of CXF ports.
+ *
+ * The settings are re-resolved every minute; when they changed, the pool
+ * switches to a new generation and ports of the old generation are discarded
+ * as soon as they are returned.
+ */
+@Singleton
+@Startup
+@PermitAll
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class TradingPortPool {
+    private static final Logger log = LoggerFactory.getLogger(TradingPortPool.class);
+
+    private static final String CONNECT_TIMEOUT_PROPERTY = "com.sun.xml.ws.connect.timeout";
+    private static final String REQUEST_TIMEOUT_PROPERTY = "com.sun.xml.ws.request.timeout";
+    // CXF: hand out response payloads as StAXSource so they can be read incrementally
+    private static final String SOURCE_FORMAT_PROPERTY = "source-preferred-format";
+
+    @WebServiceRef(TradingWebServiceService.class)
+    private TradingWebServiceService tradingWebServiceService;
+
+    @Inject
+    private Config config;
+
+    private final BlockingQueue<PooledPort> idlePorts = new LinkedBlockingQueue<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong createdPorts = new AtomicLong();
+    private final AtomicLong discardedPorts = new AtomicLong();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong inUse = new AtomicLong();
+
+    private volatile TradingPortSettings settings;
+    private volatile Semaphore permits;
+    private volatile SimulatedMarket simulatedMarket;
+
+    @PostConstruct
+    public void init() {
+        applySettings(TradingPortSettings.fromConfig(config));
+    }
+
+    /**
+     * Checks out a port, waiting at most {@code trading.ws.pool.borrowTimeout} ms.
+     * The returned lease must be closed to give the port back to the pool.
+     */
+    public Lease borrow() {
+        Semaphore currentPermits = permits;
+        TradingPortSettings currentSettings = settings;
+
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = currentPermits.tryAcquire(currentSettings.getBorrowTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a trading web service port", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        if (!acquired) {
+            borrowTimeouts.incrementAndGet();
+            throw new IllegalStateException("No trading web service port available within "
+                + currentSettings.getBorrowTimeoutMillis() + " ms");
+        }
+
+        try {
+            PooledPort pooled = takeIdlePort();
+            borrowCount.incrementAndGet();
+            inUse.incrementAndGet();
+            return new Lease(pooled, currentPermits, currentSettings);
+        } catch (RuntimeException e) {
+            currentPermits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Re-resolves the configuration and rebuilds the pool when it changed.
+     * @return true if the settings changed
+     */
+    public boolean reconfigure() {
+        TradingPortSettings resolved = TradingPortSettings.fromConfig(config);
+        if (resolved.equals(settings)) {
+            return false;
+        }
+        applySettings(resolved);
+        return true;
+    }
+
+    @Schedule(hour = "*", minute = "*", persistent = false)
+    public void checkConfiguration() {
+        try {
+            reconfigure();
+        } catch (Exception e) {
+            log.warn("Failed to re-resolve trading web service configuration: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Pool size and wait time metrics.
+     */
+    public Map<String, Object> getStatistics() {
+        long borrows = borrowCount.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("poolSize", settings.getPoolSize());
+        stats.put("idle", idlePorts.size());
+        stats.put("inUse", inUse.get());
+        stats.put("waiting", permits.getQueueLength());
+        stats.put("generation", generation.get());
+        stats.put("created", createdPorts.get());
+        stats.put("discarded", discardedPorts.get());
+        stats.put("borrowCount", borrows);
+        stats.put("borrowTimeouts", borrowTimeouts.get());
+        stats.put("waitTimeTotalMillis", TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()));
+        stats.put("waitTimeAvgMillis", borrows == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / borrows);
+        stats.put("waitTimeMaxMillis", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+        return stats;
+    }
+
+    private synchronized void applySettings(TradingPortSettings resolved) {
+        long newGeneration = generation.incrementAndGet();
+        settings = resolved;
+        permits = new Semaphore(resolved.getPoolSize(), true);
+        simulatedMarket = SimulatedTradingWebService.isSimulatorEndpoint(resolved.getEndpoint())
+            ? new SimulatedMarket(config, resolved.getRequestTimeout())
+            : null;
+        discardIdlePorts();
+        log.info("Trading web service port pool configured (generation {}): {}", newGeneration, resolved);
+    }
+
+    private PooledPort takeIdlePort() {
+        PooledPort pooled;
+        while ((pooled = idlePorts.poll()) != null) {
+            if (pooled.generation == generation.get()) {
+                return pooled;
+            }
+            discardedPorts.incrementAndGet();
+        }
+        return createPort();
+    }
+
+    private PooledPort createPort() {
+        long portGeneration = generation.get();
+        TradingPortSettings portSettings = settings;
+        SimulatedMarket market = simulatedMarket;
+        if (market != null) {
+            createdPorts.incrementAndGet();
+            return new PooledPort(new SimulatedTradingWebService(market), null, portSettings, portGeneration);
+        }
+        try {
+            TradingWebServiceService service = tradingWebServiceService != null ? tradingWebServiceService : new TradingWebServiceService();
+            TradingWebService port = service.getTradingWebServicePort();
+            configurePort((BindingProvider) port, portSettings);
+            createdPorts.incrementAndGet();
+            return new PooledPort(port, service, portSettings, portGeneration);
+        } catch (WebServiceException e) {
+            throw new RuntimeException("Unable to initialise trading web service client", e);
+        }
+    }
+
+    private void configurePort(BindingProvider bindingProvider, TradingPortSettings portSettings) {
+        Map<String, Object> context = bindingProvider.getRequestContext();
+        if (portSettings.getEndpoint() != null) {
+            context.put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, portSettings.getEndpoint());
+        }
+        if (portSettings.getUsername() != null) {
+            context.put(BindingProvider.USERNAME_PROPERTY, portSettings.getUsername());
+        }
+        if (portSettings.getPassword() != null) {
+            context.put(BindingProvider.PASSWORD_PROPERTY, portSettings.getPassword());
+        }
+        if (portSettings.getConnectTimeout() != null) {
+            context.put(CONNECT_TIMEOUT_PROPERTY, portSettings.getConnectTimeout());
+        }
+        if (portSettings.getRequestTimeout() != null) {
+            context.put(REQUEST_TIMEOUT_PROPERTY, portSettings.getRequestTimeout());
+        }
+    }
+
+    private void giveBack(PooledPort pooled, Semaphore leasePermits) {
+        inUse.decrementAndGet();
+        if (pooled.generation == generation.get()) {
+            idlePorts.offer(pooled);
+        } else {
+            discardedPorts.incrementAndGet();
+        }
+        leasePermits.release();
+    }
+
+    private void discardIdlePorts() {
+        int discarded = idlePorts.size();
+        idlePorts.clear();
+        discardedPorts.addAndGet(discarded);
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private final class PooledPort {
+        private final TradingWebService port;
+        private final TradingWebServiceService service;
+        private final TradingPortSettings portSettings;
+        private final long generation;
+        private Dispatch<Source> dispatch;
+
+        private PooledPort(TradingWebService port, TradingWebServiceService service,
+                           TradingPortSettings portSettings, long generation) {
+            this.port = port;
+            this.service = service;
+            this.portSettings = portSettings;
+            this.generation = generation;
+        }
+
+        private Dispatch<Source> dispatch() {
+            if (dispatch == null && service != null) {
+                dispatch = service.createDispatch(TradingWebServiceService.TradingWebServicePort, Source.class, Service.Mode.PAYLOAD);
+                configurePort(dispatch, portSettings);
+                dispatch.getRequestContext().put(SOURCE_FORMAT_PROPERTY, "stax");
+            }
+            return dispatch;
+        }
+
+        private void setRequestTimeout(Integer millis) {
+            setRequestTimeout((BindingProvider) port, millis);
+            if (dispatch != null) {
+                setRequestTimeout(dispatch, millis);
+            }
+        }
+
+        private void setRequestTimeout(BindingProvider provider, Integer millis) {
+            if (millis != null) {
+                provider.getRequestContext().put(REQUEST_TIMEOUT_PROPERTY, millis);
+            } else {
+                provider.getRequestContext().remove(REQUEST_TIMEOUT_PROPERTY);
+            }
+        }
+    }
+
+    /**
+     * A checked-out port. Closing the lease returns the port to the pool.
+     */
+    public final class Lease implements AutoCloseable {
+        private final PooledPort pooled;
+        private final Semaphore leasePermits;
+        private final TradingPortSettings leaseSettings;
+        private Integer timeoutOverride;
+        private boolean closed;
+
+        private Lease(PooledPort pooled, Semaphore leasePermits, TradingPortSettings leaseSettings) {
+            this.pooled = pooled;
+            this.leasePermits = leasePermits;
+            this.leaseSettings = leaseSettings;
+        }
+
+        public TradingWebService getPort() {
+            if (closed) {
+                throw new IllegalStateException("Trading web service port lease already closed");
+            }
+            return pooled.port;
+        }
+
+        /**
+         * The configured {@code trading.ws.requestTimeout} in ms, or null if none is set.
+         */
+        public Integer getConfiguredRequestTimeout() {
+            return leaseSettings.getRequestTimeout();
+        }
+
+        /**
+         * The port's payload-mode dispatch, or null for simulated ports.
+         * Responses are returned as {@link Source}s for incremental parsing.
+         */
+        public Dispatch<Source> getDispatch() {
+            getPort();
+            Dispatch<Source> dispatch = pooled.dispatch();
+            if (dispatch != null && timeoutOverride != null) {
+                pooled.setRequestTimeout(dispatch, timeoutOverride);
+            }
+            return dispatch;
+        }
+
+        /**
+         * Overrides the request timeout for calls made through this lease. The
+         * configured timeout is restored when the lease is closed.
+         */
+        public void setRequestTimeout(int millis) {
+            if (getPort() instanceof BindingProvider) {
+                pooled.setRequestTimeout(millis);
+                timeoutOverride = millis;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                if (timeoutOverride != null) {
+                    pooled.setRequestTimeout(leaseSettings.getRequestTimeout());
+                }
+                giveBack(pooled, leasePermits);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import org.eclipse.microprofile.config.Config;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Immutable snapshot of the Trading web service client configuration.
+ * Resolved once from MicroProfile Config and applied to every pooled port,
+ * so the config lookups no longer happen per call.
+ */
+public final class TradingPortSettings {
+    private static final int DEFAULT_POOL_SIZE = 8;
+    private static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 5000;
+
+    private final String endpoint;
+    private final String username;
+    private final String password;
+    private final Integer connectTimeout;
+    private final Integer requestTimeout;
+    private final int poolSize;
+    private final long borrowTimeoutMillis;
+
+    private TradingPortSettings(String endpoint, String username, String password,
+                                Integer connectTimeout, Integer requestTimeout,
+                                int poolSize, long borrowTimeoutMillis) {
+        this.endpoint = endpoint;
+        this.username = username;
+        this.password = password;
+        this.connectTimeout = connectTimeout;
+        this.requestTimeout = requestTimeout;
+        this.poolSize = poolSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    /**
+     * Resolves all trading.ws.* settings from the given config (may be null).
+     */
+    public static TradingPortSettings fromConfig(Config config) {
+        return new TradingPortSettings(
+            nonBlank(config, "trading.ws.endpoint"),
+            nonBlank(config, "trading.ws.username"),
+            nonBlank(config, "trading.ws.password"),
+            optional(config, "trading.ws.connectTimeout", Integer.class).orElse(null),
+            optional(config, "trading.ws.requestTimeout", Integer.class).orElse(null),
+            optional(config, "trading.ws.pool.size", Integer.class).filter(size -> size > 0).orElse(DEFAULT_POOL_SIZE),
+            optional(config, "trading.ws.pool.borrowTimeout", Long.class).filter(timeout -> timeout > 0).orElse(DEFAULT_BORROW_TIMEOUT_MILLIS)
+        );
+    }
+
+    private static String nonBlank(Config config, String key) {
+        return optional(config, key, String.class).filter(value -> !value.isBlank()).orElse(null);
+    }
+
+    private static <T> Optional<T> optional(Config config, String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public Integer getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Integer getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public long getBorrowTimeoutMillis() {
+        return borrowTimeoutMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TradingPortSettings)) {
+            return false;
+        }
+        TradingPortSettings that = (TradingPortSettings) o;
+        return poolSize == that.poolSize
+            && borrowTimeoutMillis == that.borrowTimeoutMillis
+            && Objects.equals(endpoint, that.endpoint)
+            && Objects.equals(username, that.username)
+            && Objects.equals(password, that.password)
+            && Objects.equals(connectTimeout, that.connectTimeout)
+            && Objects.equals(requestTimeout, that.requestTimeout);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(endpoint, username, password, connectTimeout, requestTimeout, poolSize, borrowTimeoutMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "TradingPortSettings{endpoint=" + endpoint
+            + ", username=" + username
+            + ", connectTimeout=" + connectTimeout
+            + ", requestTimeout=" + requestTimeout
+            + ", poolSize=" + poolSize
+            + ", borrowTimeoutMillis=" + borrowTimeoutMillis + "}";
+    }
+}
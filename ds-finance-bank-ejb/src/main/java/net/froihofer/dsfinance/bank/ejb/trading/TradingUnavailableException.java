@@ -0,0 +1,13 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+/**
+ * Thrown when a trading service call is not attempted because the circuit
+ * breaker is open or the bulkhead is full.
+ */
+public class TradingUnavailableException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    public TradingUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,229 @@
+package net.froihofer.dsfinance.bank.ejb.trading.simulator;
+
+import jakarta.xml.ws.WebServiceException;
+import jakarta.xml.ws.http.HTTPException;
+import net.froihofer.dsfinance.bank.ejb.trading.QuoteCache;
+import net.froihofer.dsfinance.ws.trading.api.PublicStockQuote;
+import net.froihofer.dsfinance.ws.trading.api.TradingWSException;
+import net.froihofer.dsfinance.ws.trading.api.TradingWSException_Exception;
+import org.eclipse.microprofile.config.Config;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Shared state of the local Trading web service simulator: the listed stocks,
+ * their random-walk prices, the latency distribution and the fault injection rates.
+ *
+ * Prices follow a geometric random walk with {@code trading.simulator.volatility}
+ * (standard deviation of the log return per second). Latency is log-normally
+ * distributed with the configured median and 99th percentile. Each call fails with
+ * the configured probabilities with a timeout, an HTTP 401 or a TradingWSException.
+ */
+public class SimulatedMarket {
+    private static final String DEFAULT_SYMBOLS = "AAPL:Apple Inc.,MSFT:Microsoft Corporation,GOOGL:Alphabet Inc.,"
+        + "AMZN:Amazon.com Inc.,META:Meta Platforms Inc.,NVDA:NVIDIA Corporation,TSLA:Tesla Inc.,"
+        + "NFLX:Netflix Inc.,INTC:Intel Corporation,AMD:Advanced Micro Devices Inc.,IBM:International Business Machines Corporation,"
+        + "ORCL:Oracle Corporation,CSCO:Cisco Systems Inc.,ADBE:Adobe Inc.,CRM:Salesforce Inc.,"
+        + "KO:The Coca-Cola Company,PEP:PepsiCo Inc.,JPM:JPMorgan Chase & Co.,V:Visa Inc.,DIS:The Walt Disney Company";
+    private static final double Z_99 = 2.326;
+    private static final int HISTORY_POINTS = 250;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final Map<String, Instrument> instruments = new LinkedHashMap<>();
+    private final DatatypeFactory datatypeFactory;
+
+    private final double volatility;
+    private final double latencyMu;
+    private final double latencySigma;
+    private final double timeoutRate;
+    private final double unauthorizedRate;
+    private final double rejectRate;
+    private final long timeoutMillis;
+
+    public SimulatedMarket(Config config, Integer requestTimeout) {
+        volatility = get(config, "trading.simulator.volatility", Double.class).orElse(0.001);
+        double median = Math.max(0.1, get(config, "trading.simulator.latency.median", Double.class).orElse(50.0));
+        double p99 = Math.max(median, get(config, "trading.simulator.latency.p99", Double.class).orElse(250.0));
+        latencyMu = Math.log(median);
+        latencySigma = Math.log(p99 / median) / Z_99;
+        timeoutRate = get(config, "trading.simulator.fault.timeoutRate", Double.class).orElse(0.0);
+        unauthorizedRate = get(config, "trading.simulator.fault.unauthorizedRate", Double.class).orElse(0.0);
+        rejectRate = get(config, "trading.simulator.fault.rejectRate", Double.class).orElse(0.0);
+        timeoutMillis = requestTimeout != null ? requestTimeout : 20_000;
+
+        Random seeded = new Random(get(config, "trading.simulator.seed", Long.class).orElse(42L));
+        for (String token : get(config, "trading.simulator.symbols", String.class).orElse(DEFAULT_SYMBOLS).split(",")) {
+            String[] parts = token.split(":", 2);
+            String symbol = QuoteCache.key(parts[0]);
+            if (!symbol.isEmpty()) {
+                String name = parts.length > 1 ? parts[1].trim() : parts[0].trim();
+                instruments.put(symbol, new Instrument(symbol, name, 20 + seeded.nextDouble() * 480));
+            }
+        }
+
+        try {
+            datatypeFactory = DatatypeFactory.newInstance();
+        } catch (DatatypeConfigurationException e) {
+            throw new IllegalStateException("Unable to create XML datatype factory", e);
+        }
+    }
+
+    /**
+     * Sleeps for a sampled latency and injects faults according to the configured rates.
+     */
+    void simulateCall(String operation) throws TradingWSException_Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double roll = random.nextDouble();
+
+        if (roll < timeoutRate) {
+            sleep(timeoutMillis);
+            throw new WebServiceException("Simulated timeout in " + operation,
+                new SocketTimeoutException("Read timed out after " + timeoutMillis + " ms"));
+        }
+
+        sleep((long) Math.exp(latencyMu + latencySigma * random.nextGaussian()));
+
+        if (roll < timeoutRate + unauthorizedRate) {
+            throw new HTTPException(401);
+        }
+        if (roll < timeoutRate + unauthorizedRate + rejectRate) {
+            throw reject("Simulated rejection of " + operation);
+        }
+    }
+
+    List<PublicStockQuote> quotes(List<String> symbols) {
+        List<PublicStockQuote> quotes = new ArrayList<>();
+        for (String symbol : symbols) {
+            Instrument instrument = symbol == null ? null : instruments.get(QuoteCache.key(symbol));
+            if (instrument != null) {
+                quotes.add(instrument.quote());
+            }
+        }
+        return quotes;
+    }
+
+    List<PublicStockQuote> findByCompanyName(String partOfCompanyName) {
+        String needle = partOfCompanyName == null ? "" : partOfCompanyName.trim().toLowerCase(Locale.ROOT);
+        List<PublicStockQuote> quotes = new ArrayList<>();
+        for (Instrument instrument : instruments.values()) {
+            if (instrument.name.toLowerCase(Locale.ROOT).contains(needle)) {
+                quotes.add(instrument.quote());
+            }
+        }
+        return quotes;
+    }
+
+    /**
+     * Daily closing prices of the last {@value #HISTORY_POINTS} days, walking
+     * backwards from the current price. Deterministic per symbol.
+     */
+    List<PublicStockQuote> history(String symbol) throws TradingWSException_Exception {
+        Instrument instrument = require(symbol);
+        PublicStockQuote current = instrument.quote();
+        Random random = new Random(instrument.symbol.hashCode());
+        double price = current.getLastTradePrice().doubleValue();
+        long time = System.currentTimeMillis();
+        double dailyVolatility = volatility * Math.sqrt(6.5 * 3600);
+
+        List<PublicStockQuote> history = new ArrayList<>(HISTORY_POINTS);
+        for (int i = 0; i < HISTORY_POINTS; i++) {
+            history.add(0, toQuote(instrument, price, time - i * DAY_MILLIS));
+            price = price * Math.exp(dailyVolatility * random.nextGaussian());
+        }
+        return history;
+    }
+
+    BigDecimal trade(String symbol, int shares) throws TradingWSException_Exception {
+        if (shares <= 0) {
+            throw reject("Number of shares must be positive");
+        }
+        return require(symbol).quote().getLastTradePrice();
+    }
+
+    private Instrument require(String symbol) throws TradingWSException_Exception {
+        Instrument instrument = symbol == null ? null : instruments.get(QuoteCache.key(symbol));
+        if (instrument == null) {
+            throw reject("Unknown symbol " + symbol);
+        }
+        return instrument;
+    }
+
+    private PublicStockQuote toQuote(Instrument instrument, double price, long time) {
+        PublicStockQuote quote = new PublicStockQuote();
+        quote.setSymbol(instrument.symbol);
+        quote.setCompanyName(instrument.name);
+        quote.setStockExchange("SIM");
+        quote.setLastTradePrice(BigDecimal.valueOf(price).setScale(2, RoundingMode.HALF_UP));
+        quote.setLastTradeTime(toXml(time));
+        return quote;
+    }
+
+    private XMLGregorianCalendar toXml(long time) {
+        GregorianCalendar calendar = new GregorianCalendar();
+        calendar.setTimeInMillis(time);
+        return datatypeFactory.newXMLGregorianCalendar(calendar);
+    }
+
+    private static TradingWSException_Exception reject(String message) {
+        TradingWSException faultInfo = new TradingWSException();
+        faultInfo.setMessage(message);
+        return new TradingWSException_Exception(message, faultInfo);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted during simulated call", e);
+        }
+    }
+
+    private static <T> Optional<T> get(Config config, String key, Class<T> type) {
+        return config == null ? Optional.empty() : config.getOptionalValue(key, type);
+    }
+
+    private final class Instrument {
+        private final String symbol;
+        private final String name;
+        private double price;
+        private long updatedAt;
+
+        private Instrument(String symbol, String name, double price) {
+            this.symbol = symbol;
+            this.name = name;
+            this.price = price;
+            this.updatedAt = System.currentTimeMillis();
+        }
+
+        /**
+         * Advances the random walk to now and returns the current quote.
+         */
+        private synchronized PublicStockQuote quote() {
+            long now = System.currentTimeMillis();
+            double seconds = Math.max(0, now - updatedAt) / 1000.0;
+            if (seconds > 0) {
+                price = price * Math.exp(volatility * Math.sqrt(seconds) * ThreadLocalRandom.current().nextGaussian());
+                updatedAt = now;
+            }
+            return toQuote(this, price, updatedAt);
+        }
+    }
+}
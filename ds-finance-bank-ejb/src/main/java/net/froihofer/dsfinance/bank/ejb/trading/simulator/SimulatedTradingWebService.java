@@ -0,0 +1,57 @@
+package net.froihofer.dsfinance.bank.ejb.trading.simulator;
+
+import net.froihofer.dsfinance.ws.trading.api.PublicStockQuote;
+import net.froihofer.dsfinance.ws.trading.api.TradingWSException_Exception;
+import net.froihofer.dsfinance.ws.trading.api.TradingWebService;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * In-process stand-in for the remote Trading web service, backed by a
+ * {@link SimulatedMarket}. Selected by setting {@code trading.ws.endpoint}
+ * to {@code simulator:}; meant for load tests without network access.
+ */
+public class SimulatedTradingWebService implements TradingWebService {
+    public static final String ENDPOINT_PREFIX = "simulator:";
+
+    private final SimulatedMarket market;
+
+    public SimulatedTradingWebService(SimulatedMarket market) {
+        this.market = market;
+    }
+
+    public static boolean isSimulatorEndpoint(String endpoint) {
+        return endpoint != null && endpoint.startsWith(ENDPOINT_PREFIX);
+    }
+
+    @Override
+    public List<PublicStockQuote> getStockQuotes(List<String> symbols) throws TradingWSException_Exception {
+        market.simulateCall("getStockQuotes");
+        return market.quotes(symbols);
+    }
+
+    @Override
+    public List<PublicStockQuote> getStockQuoteHistory(String symbol) throws TradingWSException_Exception {
+        market.simulateCall("getStockQuoteHistory");
+        return market.history(symbol);
+    }
+
+    @Override
+    public BigDecimal buy(String symbol, int shares) throws TradingWSException_Exception {
+        market.simulateCall("buy");
+        return market.trade(symbol, shares);
+    }
+
+    @Override
+    public List<PublicStockQuote> findStockQuotesByCompanyName(String partOfCompanyName) throws TradingWSException_Exception {
+        market.simulateCall("findStockQuotesByCompanyName");
+        return market.findByCompanyName(partOfCompanyName);
+    }
+
+    @Override
+    public BigDecimal sell(String symbol, int shares) throws TradingWSException_Exception {
+        market.simulateCall("sell");
+        return market.trade(symbol, shares);
+    }
+}
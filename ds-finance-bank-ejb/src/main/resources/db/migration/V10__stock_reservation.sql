@@ -0,0 +1,14 @@
+-- V10 Shares taken out of a depot for sell orders while they are executed at the exchange
+CREATE TABLE stock_reservation (
+    id BIGSERIAL PRIMARY KEY,
+    trade_ref VARCHAR(100) NOT NULL,
+    customer_number VARCHAR(50) NOT NULL,
+    stock_symbol VARCHAR(20) NOT NULL,
+    quantity INTEGER NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'RESERVED',
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()
+);
+
+CREATE INDEX idx_stock_reservation_expires ON stock_reservation (expires_at) WHERE status = 'RESERVED';
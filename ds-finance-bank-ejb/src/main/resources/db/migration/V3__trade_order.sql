@@ -0,0 +1,16 @@
+-- V3 Orders accepted for asynchronous execution
+CREATE TABLE trade_order (
+    id BIGSERIAL PRIMARY KEY,
+    customer_number VARCHAR(50) NOT NULL,
+    stock_symbol VARCHAR(20) NOT NULL,
+    quantity INTEGER NOT NULL,
+    side VARCHAR(4) NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    total_amount NUMERIC(18,2),
+    failure_reason VARCHAR(500),
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()
+);
+
+CREATE INDEX idx_trade_order_customer ON trade_order (customer_number, created_at);
+CREATE INDEX idx_trade_order_status ON trade_order (status) WHERE status IN ('PENDING', 'EXECUTING');
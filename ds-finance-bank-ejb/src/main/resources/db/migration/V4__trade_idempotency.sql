@@ -0,0 +1,15 @@
+-- V4 Outcomes of buy/sell requests sent with an idempotency key
+CREATE TABLE trade_idempotency (
+    request_key VARCHAR(160) PRIMARY KEY,
+    customer_number VARCHAR(50) NOT NULL,
+    fingerprint VARCHAR(200) NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'IN_PROGRESS',
+    http_status INTEGER,
+    message VARCHAR(500),
+    total_amount NUMERIC(18,2),
+    order_id BIGINT,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX idx_trade_idempotency_expires ON trade_idempotency (expires_at);
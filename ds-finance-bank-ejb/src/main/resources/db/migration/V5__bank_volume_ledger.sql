@@ -0,0 +1,9 @@
+-- V5 Single-row bank volume ledger addressed by primary key
+-- Keep only the current (newest) row and give it the well-known id 1
+DELETE FROM bank_volume
+WHERE id <> (SELECT id FROM bank_volume ORDER BY created_at DESC NULLS LAST, id DESC LIMIT 1);
+
+UPDATE bank_volume SET id = 1;
+
+ALTER TABLE bank_volume ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE bank_volume ADD CONSTRAINT bank_volume_single_row CHECK (id = 1);
@@ -0,0 +1,6 @@
+-- V6 Shards of the available bank volume (used when bank.volume.shards > 1)
+CREATE TABLE bank_volume_shard (
+    shard_id INTEGER PRIMARY KEY,
+    available_volume NUMERIC(18,2) NOT NULL CHECK (available_volume >= 0),
+    version BIGINT NOT NULL DEFAULT 0
+);
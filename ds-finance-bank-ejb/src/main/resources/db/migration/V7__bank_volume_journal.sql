@@ -0,0 +1,20 @@
+-- V7 Append-only journal of bank volume changes and its periodic snapshots
+CREATE TABLE bank_volume_journal (
+    id BIGSERIAL PRIMARY KEY,
+    trade_ref VARCHAR(100),
+    customer_number VARCHAR(50),
+    amount NUMERIC(18,2) NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()
+);
+
+CREATE INDEX idx_bank_volume_journal_created ON bank_volume_journal (created_at);
+
+-- balance = available volume after all journal entries up to journal_id
+CREATE TABLE bank_volume_snapshot (
+    id BIGSERIAL PRIMARY KEY,
+    journal_id BIGINT NOT NULL UNIQUE,
+    balance NUMERIC(18,2) NOT NULL,
+    as_of TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX idx_bank_volume_snapshot_as_of ON bank_volume_snapshot (as_of);
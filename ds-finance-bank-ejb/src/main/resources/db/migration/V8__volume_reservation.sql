@@ -0,0 +1,14 @@
+-- V8 Bank volume held for buy orders while they are executed at the exchange
+CREATE TABLE volume_reservation (
+    id BIGSERIAL PRIMARY KEY,
+    trade_ref VARCHAR(100) NOT NULL,
+    customer_number VARCHAR(50) NOT NULL,
+    amount NUMERIC(18,2) NOT NULL,
+    confirmed_amount NUMERIC(18,2),
+    status VARCHAR(20) NOT NULL DEFAULT 'RESERVED',
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()
+);
+
+CREATE INDEX idx_volume_reservation_expires ON volume_reservation (expires_at) WHERE status = 'RESERVED';
@@ -0,0 +1,23 @@
+-- V9 Dated valuations of all customer depots (one run per day, one row per customer)
+CREATE TABLE depot_valuation_run (
+    valuation_date DATE PRIMARY KEY,
+    status VARCHAR(20) NOT NULL,
+    customers INTEGER,
+    positions INTEGER,
+    symbols INTEGER,
+    unpriced_symbols INTEGER,
+    total_value NUMERIC(18,2),
+    started_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    completed_at TIMESTAMP WITH TIME ZONE
+);
+
+-- unpriced_positions: positions left out of total_value because no quote was found
+CREATE TABLE depot_valuation (
+    valuation_date DATE NOT NULL,
+    customer_id BIGINT NOT NULL REFERENCES customer(id) ON DELETE CASCADE,
+    customer_number VARCHAR(50) NOT NULL,
+    positions INTEGER NOT NULL,
+    unpriced_positions INTEGER NOT NULL,
+    total_value NUMERIC(18,2) NOT NULL,
+    PRIMARY KEY (valuation_date, customer_id)
+);
@@ -0,0 +1,44 @@
+package net.froihofer.dsfinance.bank.ejb.service;
+
+import jakarta.ejb.EJBException;
+import net.froihofer.dsfinance.bank.ejb.trading.TradingUnavailableException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TradeOutcomeTest {
+
+    @Test
+    public void breakerOpenRequestIsNotRetained() {
+        TradeOutcome outcome = TradeOutcome.failed(new EJBException(new TradingUnavailableException("Circuit breaker is open")));
+
+        assertEquals(503, outcome.getStatus());
+        assertEquals("Circuit breaker is open", outcome.getMessage());
+        assertFalse(outcome.isRetained());
+    }
+
+    @Test
+    public void validationFailureWrappedByContainerIsBadRequest() {
+        TradeOutcome outcome = TradeOutcome.failed(new EJBException(new IllegalArgumentException("Quantity must be greater than zero")));
+
+        assertEquals(400, outcome.getStatus());
+        assertTrue(outcome.isRetained());
+    }
+
+    @Test
+    public void unexpectedFailureIsRetainedAsServerError() {
+        TradeOutcome outcome = TradeOutcome.failed(new RuntimeException("Failed to execute sell order"));
+
+        assertEquals(500, outcome.getStatus());
+        assertTrue(outcome.isRetained());
+    }
+
+    @Test
+    public void executedTradeIsRetained() {
+        assertTrue(TradeOutcome.executed("Successfully bought 1 shares of AAPL", BigDecimal.TEN).isRetained());
+    }
+}
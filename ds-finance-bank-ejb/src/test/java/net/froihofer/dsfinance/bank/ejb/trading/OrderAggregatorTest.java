@@ -0,0 +1,160 @@
+package net.froihofer.dsfinance.bank.ejb.trading;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OrderAggregatorTest {
+    private static final BigDecimal PRICE = new BigDecimal("101.25");
+    // long enough for the followers of a test to join the leader's batch
+    private static final long WINDOW_MILLIS = 500;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<Integer> netOrders = new CopyOnWriteArrayList<>();
+
+    @After
+    public void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 10_000)
+    public void buysAndSellsNetToOneBuy() throws Exception {
+        OrderAggregator aggregator = new OrderAggregator(WINDOW_MILLIS);
+
+        List<Future<BigDecimal>> fills = submitBatch(aggregator, 10, -4, 3);
+
+        for (Future<BigDecimal> fill : fills) {
+            assertEquals(PRICE, fill.get());
+        }
+        assertEquals(List.of(9), netOrders);
+        assertEquals(1L, aggregator.getStatistics().get("exchangeOrders"));
+        assertEquals(4L, aggregator.getStatistics().get("crossedShares"));
+    }
+
+    @Test(timeout = 10_000)
+    public void buysAndSellsNetToOneSell() throws Exception {
+        OrderAggregator aggregator = new OrderAggregator(WINDOW_MILLIS);
+
+        List<Future<BigDecimal>> fills = submitBatch(aggregator, -10, 3);
+
+        for (Future<BigDecimal> fill : fills) {
+            assertEquals(PRICE, fill.get());
+        }
+        assertEquals(List.of(-7), netOrders);
+    }
+
+    @Test(timeout = 10_000)
+    public void cancellingOrdersAreCrossedWithoutExchangeOrder() throws Exception {
+        OrderAggregator aggregator = new OrderAggregator(WINDOW_MILLIS);
+
+        List<Future<BigDecimal>> fills = submitBatch(aggregator, 5, -5);
+
+        for (Future<BigDecimal> fill : fills) {
+            assertEquals(PRICE, fill.get());
+        }
+        assertEquals(List.of(0), netOrders);
+        assertEquals(0L, aggregator.getStatistics().get("exchangeOrders"));
+        assertEquals(5L, aggregator.getStatistics().get("crossedShares"));
+    }
+
+    @Test(timeout = 10_000)
+    public void failedLeaderFailsItsFollowers() throws Exception {
+        OrderAggregator aggregator = new OrderAggregator(WINDOW_MILLIS);
+        RuntimeException failure = new RuntimeException("Trading service communication failed");
+
+        Future<BigDecimal> leader = executor.submit(() -> aggregator.execute("AAPL", 10, net -> {
+            throw failure;
+        }));
+        awaitOpenBatch(aggregator);
+        Future<BigDecimal> follower = executor.submit(() -> aggregator.execute("AAPL", -3, net -> {
+            fail("Only the leader places the net order");
+            return null;
+        }));
+
+        assertSame(failure, causeOf(leader));
+        assertSame(failure, causeOf(follower));
+        assertEquals(1L, aggregator.getStatistics().get("failedBatches"));
+    }
+
+    @Test(timeout = 10_000)
+    public void orderAfterTheWindowOpensNewBatch() throws Exception {
+        OrderAggregator aggregator = new OrderAggregator(10);
+        CountDownLatch placing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<BigDecimal> first = executor.submit(() -> aggregator.execute("AAPL", 10, net -> {
+            netOrders.add(net);
+            placing.countDown();
+            release.await();
+            return PRICE;
+        }));
+        assertTrue(placing.await(5, TimeUnit.SECONDS));
+
+        // The first batch is closed and its net order in flight
+        BigDecimal late = aggregator.execute("AAPL", -4, this::placeNetOrder);
+        release.countDown();
+
+        assertEquals(PRICE, late);
+        assertEquals(PRICE, first.get());
+        assertEquals(List.of(10, -4), netOrders);
+        assertEquals(2L, aggregator.getStatistics().get("batches"));
+    }
+
+    /**
+     * Submits the orders for one symbol, the first one as the leader
+     */
+    private List<Future<BigDecimal>> submitBatch(OrderAggregator aggregator, int... signedQuantities) throws InterruptedException {
+        List<Future<BigDecimal>> fills = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < signedQuantities.length; i++) {
+            int quantity = signedQuantities[i];
+            fills.add(executor.submit(() -> aggregator.execute("AAPL", quantity, this::placeNetOrder)));
+            if (i == 0) {
+                awaitOpenBatch(aggregator);
+            } else {
+                awaitOrders(aggregator, i + 1);
+            }
+        }
+        return fills;
+    }
+
+    private BigDecimal placeNetOrder(int net) {
+        netOrders.add(net);
+        return PRICE;
+    }
+
+    private static void awaitOpenBatch(OrderAggregator aggregator) throws InterruptedException {
+        while ((Integer) aggregator.getStatistics().get("openBatches") == 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitOrders(OrderAggregator aggregator, long count) throws InterruptedException {
+        while ((Long) aggregator.getStatistics().get("orders") < count) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static Throwable causeOf(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("Order was expected to fail");
+        return null;
+    }
+}